@@ -0,0 +1,326 @@
+package autocomplete;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+    /*
+     * @Author Daniel Xu
+     */
+
+/**
+ * The read-only queries shared by the array-backed tries, FrozenAutocomplete
+ * (arrays on the heap) and MappedAutocomplete (the same arrays in a
+ * memory-mapped snapshot file).
+ *
+ * Nodes are numbered in depth-first (preorder) order and every attribute of
+ * a node is read by its number:
+ * - label: the letter on the edge leading to the node
+ * - end: one past the last node of the node's subtree, so the subtree of
+ *   node i is the range [i, end(i)), its first child is i + 1 and the next
+ *   sibling of a child c is end(c)
+ * - parent: the parent node, used to spell out a word only when it is returned
+ * - prefixes: number of words going through the node
+ * - weight: the weight of the word ending at the node, -1 if there is none
+ * - maxWeight: the largest weight in the node's subtree
+ *
+ * Preorder also means that node numbers sort like the words they spell, so
+ * getSuggestions() is a scan of one contiguous range.
+ */
+abstract class ArrayTrie implements IAutocomplete {
+
+    /*
+     * @return the number of nodes, the root included
+     */
+    abstract int size();
+
+    abstract byte label(int node);
+
+    abstract int end(int node);
+
+    abstract int parent(int node);
+
+    abstract int prefixes(int node);
+
+    abstract long weight(int node);
+
+    abstract long maxWeight(int node);
+
+    /**
+     * An array-backed trie cannot be changed
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void addWord(String word, long weight) {
+        throw new UnsupportedOperationException("the trie is read-only");
+    }
+
+    /**
+     * An array-backed trie cannot be changed, build an Autocomplete and
+     * freeze() it
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public Node buildTrie(String filename, int k) {
+        throw new UnsupportedOperationException("the trie is read-only");
+    }
+
+    /**
+     * @param prefix
+     * @return a detached Node with the term and counts of the node at the end
+     *         of prefix, or null. Its child array is left empty.
+     */
+    @Override
+    public Node getSubTrie(String prefix) {
+        int index = locate(prefix);
+        if (index < 0) {
+            return null;
+        }
+
+        Node result;
+        if (weight(index) >= 0) {
+            result = new Node(prefix, weight(index));
+            result.setWords(words(index));
+        } else {
+            result = new Node();
+        }
+        result.setPrefixes(prefixes(index));
+        result.setMaxWeight(maxWeight(index));
+        return result;
+    }
+
+    /**
+     * @param prefix
+     * @return the number of words that start with prefix.
+     */
+    @Override
+    public int countPrefixes(String prefix) {
+        int index = locate(prefix);
+        if (index < 0) {
+            return 0;
+        }
+        return prefixes(index);
+    }
+
+    /**
+     * @param prefix
+     * @return a List containing all the ITerm objects with query starting with
+     *         prefix, in lexicographic order. Return an empty list if there are
+     *         no ITerm object starting with prefix.
+     */
+    @Override
+    public List<ITerm> getSuggestions(String prefix) {
+        List<ITerm> container = new ArrayList<ITerm>();
+        int index = locate(prefix);
+
+        if (index >= 0) {
+            suggestHelper(index, new StringBuilder(prefix), container);
+        }
+        return container;
+    }
+
+    /**
+     * Best-first search ranked by the max weight of every subtree, dropping
+     * the subtrees that cannot beat the k-th best word pushed so far, see
+     * Autocomplete.getTopSuggestions()
+     *
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects starting with prefix, sorted by
+     *         descending weight
+     */
+    @Override
+    public List<ITerm> getTopSuggestions(String prefix, int k) {
+        List<ITerm> container = new ArrayList<ITerm>();
+        int index = locate(prefix);
+
+        if (index < 0 || k <= 0) {
+            return container;
+        }
+
+        PriorityQueue<Candidate> frontier = new PriorityQueue<Candidate>();
+        //min-heap of the k best word weights pushed so far
+        PriorityQueue<Long> best = new PriorityQueue<Long>();
+        frontier.add(new Candidate(index, false, maxWeight(index)));
+
+        while (!frontier.isEmpty() && container.size() < k) {
+            Candidate next = frontier.poll();
+            int node = next.index;
+
+            if (next.word) {
+                container.add(new Term(spell(node), weight(node)));
+                continue;
+            }
+
+            if (weight(node) >= 0) {
+                frontier.add(new Candidate(node, true, weight(node)));
+                best.add(weight(node));
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+
+            long floor = best.size() == k ? best.peek() : Long.MIN_VALUE;
+            for (int child = node + 1; child < end(node); child = end(child)) {
+                if (maxWeight(child) >= floor) {
+                    frontier.add(new Candidate(child, false, maxWeight(child)));
+                }
+            }
+        }
+        return container;
+    }
+
+    /**
+     * @return the number of nodes in the trie, the root included
+     */
+    public int countNodes() {
+        return size();
+    }
+
+    /*
+     * This walks the trie along prefix
+     *
+     * @param prefix
+     * @return the node at the end of prefix, or -1
+     */
+    int locate(String prefix) {
+        if (prefix == null) {
+            return -1;
+        }
+
+        int node = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            int tmp = prefix.charAt(i);
+            if (tmp < 97 || tmp > 122) {
+                return -1;
+            }
+            node = child(node, (byte) tmp);
+            if (node < 0) {
+                return -1;
+            }
+        }
+        return node;
+    }
+
+    /*
+     * @return the child of node with the given label, or -1
+     */
+    int child(int node, byte label) {
+        int end = end(node);
+        for (int child = node + 1; child < end; child = end(child)) {
+            byte found = label(child);
+            if (found == label) {
+                return child;
+            }
+            if (found > label) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * This method is a helper function for getSuggestions(). Children are
+     * visited in letter order, so the words come out sorted.
+     *
+     * @param node the current node
+     * @param word the word spelled by node
+     * @param container is the list that stores all the terms
+     */
+    private void suggestHelper(int node, StringBuilder word, List<ITerm> container) {
+        if (weight(node) >= 0) {
+            container.add(new Term(word.toString(), weight(node)));
+        }
+        for (int child = node + 1; child < end(node); child = end(child)) {
+            word.append((char) label(child));
+            suggestHelper(child, word, container);
+            word.setLength(word.length() - 1);
+        }
+    }
+
+    /*
+     * @return the number of times the word ending at node was added: the
+     *         words going through node less those going on to a child
+     */
+    int words(int node) {
+        int count = prefixes(node);
+        for (int child = node + 1; child < end(node); child = end(child)) {
+            count -= prefixes(child);
+        }
+        return count;
+    }
+
+    /*
+     * Adds every word to buffer in lexicographic order, a word added n times
+     * is added n times
+     *
+     * @param buffer the buffer the words are added to
+     */
+    void collectWords(TermBuffer buffer) {
+        collectHelper(0, new StringBuilder(), buffer);
+    }
+
+    /*
+     * This method is a helper function for collectWords()
+     */
+    private void collectHelper(int node, StringBuilder word, TermBuffer buffer) {
+        if (node > 0 && weight(node) >= 0) {
+            String query = word.toString();
+            for (int i = words(node); i > 0; i--) {
+                buffer.add(query, weight(node));
+            }
+        }
+        for (int child = node + 1; child < end(node); child = end(child)) {
+            word.append((char) label(child));
+            collectHelper(child, word, buffer);
+            word.setLength(word.length() - 1);
+        }
+    }
+
+    /*
+     * @return the word spelled by the path from the root to node
+     */
+    String spell(int node) {
+        int length = 0;
+        for (int i = node; i > 0; i = parent(i)) {
+            length++;
+        }
+        char[] word = new char[length];
+        for (int i = node; i > 0; i = parent(i)) {
+            word[--length] = (char) label(i);
+        }
+        return new String(word);
+    }
+
+    /*
+     * An entry of the getTopSuggestions() frontier, ordered like the one in
+     * Autocomplete. Node numbers follow the lexicographic order of the paths,
+     * so equal weights are broken by number.
+     */
+    private static class Candidate implements Comparable<Candidate> {
+
+        private final int index;
+        private final boolean word;
+        private final long weight;
+
+        Candidate(int index, boolean word, long weight) {
+            this.index = index;
+            this.word = word;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(Candidate that) {
+            if (this.weight != that.weight) {
+                return this.weight > that.weight ? -1 : 1;
+            }
+            if (this.index != that.index) {
+                return this.index < that.index ? -1 : 1;
+            }
+            //a node before its own word, which only exists once it is expanded
+            return (this.word ? 1 : 0) - (that.word ? 1 : 0);
+        }
+    }
+
+}
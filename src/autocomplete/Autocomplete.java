@@ -5,9 +5,28 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
     /*
      * @Author Daniel Xu
@@ -15,9 +34,30 @@ import java.util.List;
 
 public class Autocomplete implements IAutocomplete {
 
+    /*
+     * Heaviest first, ties in lexicographic order, the same order
+     * getTopSuggestions() returns its terms in
+     */
+    static final Comparator<ITerm> BY_WEIGHT_THEN_TERM = new Comparator<ITerm>() {
+        public int compare(ITerm t1, ITerm t2) {
+            if (t1.getWeight() != t2.getWeight()) {
+                return t1.getWeight() > t2.getWeight() ? -1 : 1;
+            }
+            return t1.getTerm().compareTo(t2.getTerm());
+        }
+    };
+
+    /*
+     * Each edit divides the weight a fuzzy match is ranked by, see
+     * getFuzzySuggestions()
+     */
+    public static final double EDIT_PENALTY = 10;
 
     private Node rootNode;
     private int numSuggest;
+    private int materializedK;
+    private int materializedDepth;
+    private double lastBuildRate;
     
     /*
      * This the constructor for the class
@@ -25,7 +65,22 @@ public class Autocomplete implements IAutocomplete {
 
     public Autocomplete() {
         this.numSuggest = 0;
-        this.rootNode = new Node("" , 0);
+        this.materializedK = 0;
+        this.materializedDepth = -1;
+        this.lastBuildRate = 0;
+        this.rootNode = new Node();
+    }
+
+    /*
+     * This makes a trie over an existing root, see ConcurrentAutocomplete
+     *
+     * @param rootNode the root of the trie
+     * @param numSuggest the number of suggestions given to buildTrie()
+     */
+    Autocomplete(Node rootNode, int numSuggest) {
+        this();
+        this.rootNode = rootNode;
+        this.numSuggest = numSuggest;
     }
  
     /**
@@ -54,75 +109,78 @@ public class Autocomplete implements IAutocomplete {
         
         Node tmpNode = this.getRootNode();
         tmpNode.setPrefixes(tmpNode.getPrefixes() + 1);
+        tmpNode.setMaxWeight(Math.max(tmpNode.getMaxWeight(), weight));
+        tmpNode.setTopTerms(null);
 
         if (word.length() > 0) {
             //process letter by letter
-            addHelper(word, weight, tmpNode.getReference(), word);
+            addHelper(word, weight, tmpNode);
         }
     }
     
     /*
      * This is a helper function for addWord() method. This will take in the word,
-     * weight of the word, an array of nodes, and the actual word for creating the term
+     * weight of the word and the current node. The word is not stored, only its
+     * weight on the node of its last letter.
      * 
      * @param word that will be traversed
      * @param weight of the word
-     * @param array of the current node 
-     * @param actual word 
+     * @param parent the current node, whose child gets the first letter of word
      *
      */
-    private void addHelper(String word, long weight, Node[] array, String actualWord) {
+    private void addHelper(String word, long weight, Node parent) {
         if (word.length() > 0) {
 
             //index 
             int letterIndex =  word.charAt(0) - 97;
-            //If array spot is null 
-            if (array[letterIndex] == null) {
+            Node existing = parent.getChild(letterIndex);
+            //If child is null 
+            if (existing == null) {
                 //TWO CASES
 
                 //case 1 last letter, then create Node with (word,weight) 
                 if (word.length() == 1) {
-                    Node lastNode = new Node(actualWord, weight);
+                    Node lastNode = new Node(word, weight);
                     lastNode.setPrefixes(1);
                     lastNode.setWords(1);
-                    array[letterIndex] = lastNode;
-
-                    //whole word  is: " + lastNode.getTerm().getTerm());
+                    parent.setChild(letterIndex, lastNode);
 
                     //case 2 not last letter, create a Node with term = null, word = 0, p = 1    
                 } else {
                     Node tmpNode = new Node();
                     tmpNode.setPrefixes(1);
                     tmpNode.setWords(0);
-                    array[letterIndex] = tmpNode;
+                    tmpNode.setMaxWeight(weight);
+                    parent.setChild(letterIndex, tmpNode);
 
-                    addHelper(word.substring(1), weight, tmpNode.getReference(), actualWord); 
+                    addHelper(word.substring(1), weight, tmpNode); 
                 }
-                //If array contains something     
+                //If child exists     
             } else { 
 
                 //If not null
+                existing.setMaxWeight(Math.max(existing.getMaxWeight(), weight));
+                //a materialized list on this path may now be stale
+                existing.setTopTerms(null);
 
                 //existing node that did not store, now must store word since word.length == 1
                 if (word.length() == 1) {
-                    Term newTerm = new Term(actualWord, weight);
-                    array[letterIndex].setTerm(newTerm);
+                    existing.setWeight(weight);
 
                     //update prefix
-                    int prefix = array[letterIndex].getPrefixes();
-                    array[letterIndex].setPrefixes(prefix + 1);
+                    int prefix = existing.getPrefixes();
+                    existing.setPrefixes(prefix + 1);
 
                     //update words
-                    int words = array[letterIndex].getWords();
-                    array[letterIndex].setPrefixes(words + 1); //words should be zero 
+                    int words = existing.getWords();
+                    existing.setWords(words + 1); //words should be zero 
 
 
                     //Exising node and word.length > 1
                 } else {
-                    int prefix = array[letterIndex].getPrefixes();
-                    array[letterIndex].setPrefixes(prefix + 1);
-                    addHelper(word.substring(1), weight, 
-                            array[letterIndex].getReference(), actualWord);
+                    int prefix = existing.getPrefixes();
+                    existing.setPrefixes(prefix + 1);
+                    addHelper(word.substring(1), weight, existing);
                 }
             }  
         }
@@ -144,7 +202,230 @@ public class Autocomplete implements IAutocomplete {
     @Override
     public Node buildTrie(String filename, int k) {
         this.numSuggest = k;
-        
+        readTerms(filename, this);
+        return this.rootNode;
+    }
+
+    /**
+     * Same as buildTrie(), but the words are inserted by parallelism threads.
+     * The file is read once and its words are split into 26 shards by first
+     * letter. Each shard is then inserted under its own root child in a
+     * separate fork-join task, and the root counts are updated once every
+     * shard is done.
+     * 
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @param parallelism the number of threads inserting words
+     * @return the root of the Trie
+     */
+    public Node buildTrieParallel(String filename, int k, int parallelism) {
+        this.numSuggest = k;
+        long start = System.nanoTime();
+
+        final TermBuffer[] shards = new TermBuffer[26];
+        for (int i = 0; i < 26; i++) {
+            shards[i] = new TermBuffer();
+        }
+        readTerms(filename, new ObjLongConsumer<String>() {
+            public void accept(String word, long weight) {
+                if (isWord(word)) {
+                    shards[word.charAt(0) - 97].add(word, weight);
+                }
+            }
+        });
+
+        int words = insertShards(shards, parallelism);
+        recordBuildRate(words, start);
+        return this.rootNode;
+    }
+
+    /**
+     * Same as buildTrieParallel(), but the file is memory-mapped and parsed
+     * in parallel too, in line-aligned chunks, straight from the bytes (see
+     * TermFileParser). Besides the "weight\tword" lines of buildTrie(), this
+     * accepts the "0 word" lines IndexBuilder.createAutocompleteFile() writes.
+     * 
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @param parallelism the number of threads parsing and inserting words
+     * @return the root of the Trie
+     */
+    public Node buildTrieMapped(String filename, int k, int parallelism) {
+        this.numSuggest = k;
+        long start = System.nanoTime();
+
+        try {
+            TermBuffer[] shards = TermFileParser.parse(Paths.get(filename), parallelism);
+            int words = insertShards(shards, parallelism);
+            recordBuildRate(words, start);
+        } catch (NoSuchFileException e) {
+            System.exit(-1);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return this.rootNode;
+    }
+
+    /**
+     * Same as buildTrie() for a file whose words are in lexicographic order.
+     * Words are added with a SortedTrieLoader, which never walks back up to
+     * the root. The file is parsed like in buildTrieMapped(), so the "0 word"
+     * lines of IndexBuilder.createAutocompleteFile() are read too; that file
+     * lists the words in the order of the pages, not sorted, so its out of
+     * order words go through the addWord() fallback of the loader, or throw
+     * if strict.
+     * 
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @param strict whether an out of order word throws an
+     *               IllegalArgumentException instead of being inserted with
+     *               addWord()
+     * @return the root of the Trie
+     */
+    public Node buildTrieSorted(String filename, int k, boolean strict) {
+        this.numSuggest = k;
+        long start = System.nanoTime();
+
+        final SortedTrieLoader loader = new SortedTrieLoader(this, strict);
+        try {
+            TermFileParser.read(Paths.get(filename), new ObjLongConsumer<String>() {
+                public void accept(String word, long weight) {
+                    loader.add(word, weight);
+                }
+            });
+        } catch (NoSuchFileException e) {
+            System.exit(-1);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            loader.finish();
+        }
+
+        recordBuildRate(loader.getLoaded() + loader.getUnsorted(), start);
+        return this.rootNode;
+    }
+
+    /**
+     * @return the number of words per second inserted by the last call to
+     *         buildTrieParallel(), buildTrieMapped() or buildTrieSorted(),
+     *         file reading included
+     */
+    public double lastBuildRate() {
+        return this.lastBuildRate;
+    }
+
+    /*
+     * This inserts every shard under the matching root child, one fork-join
+     * task per shard. A task only ever touches its own subtree, and the root
+     * is updated after all the tasks are joined.
+     * 
+     * @param shards the words of each first letter, every word already valid
+     * @param parallelism the number of threads
+     * @return the number of words inserted
+     */
+    int insertShards(final TermBuffer[] shards, int parallelism) {
+        final Node[] subtrees = new Node[26];
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+
+        int words = 0;
+        long weight = this.rootNode.getMaxWeight();
+        for (int i = 0; i < 26; i++) {
+            final int letter = i;
+            final TermBuffer shard = shards[i];
+            if (shard.size() == 0) {
+                continue;
+            }
+            words += shard.size();
+            weight = Math.max(weight, shard.maxWeight());
+            subtrees[letter] = this.rootNode.getChild(letter);
+
+            tasks.add(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    //a stand-in for the root, so addHelper() only writes
+                    //this shard's subtree
+                    Node holder = new Node();
+                    holder.setChild(letter, subtrees[letter]);
+                    for (int j = 0; j < shard.size(); j++) {
+                        addHelper(shard.word(j), shard.weight(j), holder);
+                    }
+                    subtrees[letter] = holder.getChild(letter);
+                }
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        Node root = this.rootNode;
+        for (int i = 0; i < 26; i++) {
+            if (subtrees[i] != null) {
+                root.setChild(i, subtrees[i]);
+            }
+        }
+        root.setPrefixes(root.getPrefixes() + words);
+        root.setMaxWeight(weight);
+        root.setTopTerms(null);
+        return words;
+    }
+
+    /*
+     * Remembers the words per second of a build that started at start
+     */
+    void recordBuildRate(int words, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        this.lastBuildRate = seconds > 0 ? words / seconds : 0;
+    }
+
+    /*
+     * @return true if addWord() would accept word: not empty and only a - z
+     */
+    static boolean isWord(String word) {
+        if (word == null || word.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            int tmp = word.charAt(i);
+            if (tmp < 97 || tmp > 122) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * This reads the autocomplete file line by line and calls addWord() on
+     * target for every (weight, word) line, so that every IAutocomplete of
+     * this package builds from the same file format
+     * 
+     * @param filename the file to read all the autocomplete data from
+     * @param target the trie the words are added to
+     */
+    static void readTerms(String filename, IAutocomplete target) {
+        readTerms(filename, target::addWord);
+    }
+
+    /*
+     * Same as readTerms(filename, target), handing every (word, weight) pair
+     * to consumer instead
+     * 
+     * @param filename the file to read all the autocomplete data from
+     * @param consumer called with the lower case word and its weight
+     */
+    static void readTerms(String filename, ObjLongConsumer<String> consumer) {
         File file = new File(filename);
         long weight;
         String query;
@@ -167,7 +448,7 @@ public class Autocomplete implements IAutocomplete {
                           
                             //==============
                             //add words here 
-                            addWord(query, weight);
+                            consumer.accept(query, weight);
                             //==============
                         }
                     }
@@ -180,18 +461,17 @@ public class Autocomplete implements IAutocomplete {
         } catch (FileNotFoundException e) {
             System.exit(-1);        
         }
-        return this.rootNode;
     }
 
     /*
-     * This is a helper function for buildTrie(). This method basically 
+     * This is a helper function for readTerms(). This method basically 
      * reads in the line and if it contains a tab or "\t", it will parse it, 
      * remove the spaces and return the strings. 
      * 
      * @param line, the read in line
      * @return String[] containing the strings of the current line
      */
-    private String[] parseAndInsert(String line) {
+    private static String[] parseAndInsert(String line) {
         
         if (line.contains("\t")) {
             
@@ -216,7 +496,7 @@ public class Autocomplete implements IAutocomplete {
 
     /**
      * This method returns the root that has the last letter of the prefix. This method 
-     * will call getHelper(), which recursively traverses the trie until it gets
+     * will call locate(), which walks the trie one letter at a time until it gets
      * to the last letter of the prefix and gets that corresponding root  
      * 
      * @param prefix
@@ -225,46 +505,44 @@ public class Autocomplete implements IAutocomplete {
      */  
     @Override
     public Node getSubTrie(String prefix) { 
-        if (prefix == null) {
-            return null;
-        }
-        
-        if (prefix == "") {
-            return this.rootNode;
-        }
-         
-        //check a - z
-        for (int i = 0; i < prefix.length(); i++) {
-            int tmp = prefix.charAt(i);
-            if (tmp < 97 || tmp > 122) {
-                return null;
-            }
-        } 
-        
-        Node root = this.rootNode;        
-        Node subRootPrefix = getHelper(prefix, root);
-
-        return subRootPrefix;
+        return locate(prefix);
     }
 
     /*
-     * This helper function is used to traverse the trie until it gets
-     * to the last letter of the prefix and gets that corresponding root  
+     * This walks the trie along prefix one character at a time, checking
+     * each character once on the way
      * 
-     * @param prefix the actual string of the prefix 
-     * @param the node to check for its array of nodes for the next letter of prefix 
-     * @return the root that has the last letter as the prefix 
+     * @param prefix the prefix, may be any CharSequence
+     * @return the node that has the last letter of the prefix, the root for
+     *         the empty prefix, or null
      */
-    
-    private Node getHelper(String prefix, Node node) {
-        if (node == null) {
+    Node locate(CharSequence prefix) {
+        return locate(prefix, null);
+    }
+
+    /*
+     * Same as locate(prefix), counting the nodes reached on trace
+     *
+     * @param trace receives the work done, or null
+     */
+    Node locate(CharSequence prefix, QueryTrace trace) {
+        if (prefix == null) {
             return null;
         }
-        if (prefix.length() == 1) {
-            return node.getReference()[prefix.charAt(0) - 97];
-        } else {
-            return getHelper(prefix.substring(1), node.getReference()[prefix.charAt(0) - 97]);
+
+        Node node = this.rootNode;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            int tmp = prefix.charAt(i);
+            //check a - z
+            if (tmp < 97 || tmp > 122) {
+                return null;
+            }
+            if (trace != null) {
+                trace.prefixNodes++;
+            }
+            node = node.getChild(tmp - 97);
         }
+        return node;
     }
  
     /**
@@ -276,28 +554,23 @@ public class Autocomplete implements IAutocomplete {
      */
     @Override
     public int countPrefixes(String prefix) {
-        //Originally had this prefix "" return 0;
-        
-        if (prefix == null) {
-            return 0;
-        }
-         
-        //check a - z
-        for (int i = 0; i < prefix.length(); i++) {
-            int tmp = prefix.charAt(i);
-            if (tmp < 97 || tmp > 122) {
-                return 0;
-            }
-        }  
-        
-        Node prefixNode = getSubTrie(prefix);
+        return countPrefixes((CharSequence) prefix);
+    }
+
+    /**
+     * Same as countPrefixes(String), for any CharSequence, without allocating
+     * 
+     * @param prefix
+     * @return the number of words that start with prefix.
+     */
+    public int countPrefixes(CharSequence prefix) {
+        Node prefixNode = locate(prefix);
        
         if (prefixNode == null) {
             return 0;
         } 
         
-        int tmp = prefixNode.getPrefixes();
-        return tmp;
+        return prefixNode.getPrefixes();
     }
   
     
@@ -315,60 +588,676 @@ public class Autocomplete implements IAutocomplete {
 
     @Override
     public List<ITerm> getSuggestions(String prefix) {
-        
+        return suggestionsAt(locate(prefix), prefix);
+    }
+
+    /**
+     * Same as getSuggestions(String), but the words are written to a buffer
+     * owned by the caller and nothing is allocated once the buffer has
+     * warmed up. Only the first buffer.capacity() words are kept.
+     * 
+     * @param prefix
+     * @param buffer receives the words in lexicographic order
+     * @return the number of words written to buffer
+     */
+    public int getSuggestions(CharSequence prefix, SuggestionBuffer buffer) {
+        buffer.clear();
+        Node node = locate(prefix);
+        if (node != null) {
+            buffer.all(node, prefix);
+        }
+        return buffer.size();
+    }
+
+    /*
+     * This returns every word of the subtree of node, see getSuggestions()
+     * 
+     * @param node the node that has the last letter of the prefix, or null
+     * @param prefix the string of node
+     * @return the words in lexicographic order
+     */
+    List<ITerm> suggestionsAt(Node node, CharSequence prefix) {
+        return suggestionsAt(node, prefix, null);
+    }
+
+    /*
+     * Same as suggestionsAt(node, prefix), counting the nodes visited on trace
+     *
+     * @param trace receives the work done, or null
+     */
+    List<ITerm> suggestionsAt(Node node, CharSequence prefix, QueryTrace trace) {
         List<ITerm> container = new ArrayList<ITerm>();
-        //empty string
-       
-        if (prefix == null) {
+
+        if (node != null) {
+            suggestHelper(node, new StringBuilder(prefix), container, trace);
+        }
+
+        //children are visited in letter order, so the words are already sorted
+        return container;
+    }
+    
+    /*
+     * This method is a helper function for getSuggestions()
+     * 
+     * @param the node that has the last letter of the prefix 
+     * @param word the string of node, restored before returning
+     * @param container is the list that stores all the string words of the terms
+     * @param trace receives the work done, or null
+     */
+    private void suggestHelper(Node node, StringBuilder word, List<ITerm> container,
+            QueryTrace trace) {
+        if (trace != null) {
+            trace.nodesVisited++;
+        }
+        if (node.isWord()) {
+            container.add(new Term(word.toString(), node.getWeight()));
+        }
+
+        for (int c = node.nextLetter(0); c >= 0; c = node.nextLetter(c + 1)) {
+            word.append(Node.symbol(c));
+            suggestHelper(node.getChild(c), word, container, trace);
+            word.setLength(word.length() - 1);
+        } 
+    }
+    
+    /**
+     * This method returns the k heaviest words that start with the given prefix,
+     * heaviest first. Instead of collecting the whole subtree like getSuggestions(),
+     * it walks the trie best-first using the max subtree weight stored on every
+     * Node, so the work done depends on k and not on the size of the subtree.
+     * 
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects starting with prefix, sorted by
+     *         descending weight. Return an empty list if there are none.
+     */
+    @Override
+    public List<ITerm> getTopSuggestions(String prefix, int k) {
+        return topSuggestionsAt(locate(prefix), prefix, k);
+    }
+
+    /**
+     * Same as getTopSuggestions(String, int) with buffer.capacity() as k, but
+     * the terms are written to a buffer owned by the caller and nothing is
+     * allocated once the buffer has warmed up
+     * 
+     * @param prefix
+     * @param buffer receives the terms, heaviest first
+     * @return the number of terms written to buffer
+     */
+    public int getTopSuggestions(CharSequence prefix, SuggestionBuffer buffer) {
+        buffer.clear();
+        Node node = locate(prefix);
+        if (node == null) {
+            return 0;
+        }
+
+        Term[] stored = node.getTopTerms();
+        if (stored != null && buffer.capacity() <= this.materializedK) {
+            for (int i = 0; i < stored.length; i++) {
+                buffer.add(stored[i]);
+            }
+        } else {
+            buffer.top(node, prefix);
+        }
+        return buffer.size();
+    }
+
+    /*
+     * This returns the k heaviest words of the subtree of node, see
+     * getTopSuggestions(prefix, k)
+     * 
+     * @param node the node that has the last letter of the prefix, or null
+     * @param prefix the string of node
+     * @param k the maximum number of terms to return
+     * @return the words sorted by descending weight
+     */
+    List<ITerm> topSuggestionsAt(Node node, CharSequence prefix, int k) {
+        return topSuggestionsAt(node, prefix, k, null);
+    }
+
+    /*
+     * Same as topSuggestionsAt(node, prefix, k), counting the work of the
+     * search on trace
+     *
+     * @param trace receives the work done, or null
+     */
+    List<ITerm> topSuggestionsAt(Node node, CharSequence prefix, int k, QueryTrace trace) {
+        List<ITerm> container = new ArrayList<ITerm>();
+
+        if (node == null || k <= 0) {
             return container;
         }
-        
-        //check a - z
-        for (int i = 0; i < prefix.length(); i++) {
-            int tmp = prefix.charAt(i);
-            if (tmp < 97 || tmp > 122) {
-                return container;
+
+        Term[] stored = node.getTopTerms();
+        if (stored != null && k <= this.materializedK) {
+            for (int i = 0; i < stored.length && i < k; i++) {
+                container.add(stored[i]);
             }
-        }  
-        
-        Node tmp = getSubTrie(prefix);
-        
-        if (tmp != null) {
-            
-            if (tmp.getTerm() != null && !tmp.getTerm().getTerm().equals("")) {
-                container.add(tmp.getTerm());
+            if (trace != null) {
+                trace.materialized = true;
             }
-            
-            for (int i = 0; i < 26; i++) {
-                if (tmp.getReference()[i] != null) {
-                    suggestHelper(tmp.getReference()[i], container);
+        } else {
+            topHelper(node, prefix, k, container, trace);
+        }
+        return container;
+    }
+
+    /**
+     * Same as getTopSuggestions(prefix, k), using the number of suggestions
+     * given to buildTrie() as k
+     * 
+     * @param prefix
+     * @return a List of at most numberSuggestions() ITerm objects starting with
+     *         prefix, sorted by descending weight
+     */
+    public List<ITerm> getTopSuggestions(String prefix) {
+        return getTopSuggestions(prefix, this.numSuggest);
+    }
+
+    /**
+     * Precomputes the k heaviest words of every node at depth maxDepth or less
+     * (the root is at depth 0), so that getTopSuggestions() for those prefixes
+     * is a getSubTrie() walk plus a copy of the stored list. Deeper prefixes, or
+     * requests for more than k terms, still use the best-first search. The
+     * lists are built bottom-up: nodes at maxDepth are searched, shallower
+     * nodes merge the lists of their children.
+     * 
+     * addWord() drops the lists on the path of the new word, so those prefixes
+     * fall back to the search until materialize() is called again.
+     * 
+     * @param k the number of words to store per node, 0 removes all the lists
+     * @param maxDepth the deepest node that gets a list, the higher it is the
+     *                 more memory is used
+     */
+    public void materialize(int k, int maxDepth) {
+        if (this.materializedK > 0) {
+            materializeHelper(this.rootNode, new StringBuilder(), this.materializedDepth, 0);
+        }
+        if (k <= 0 || maxDepth < 0) {
+            this.materializedK = 0;
+            this.materializedDepth = -1;
+            return;
+        }
+        this.materializedK = k;
+        this.materializedDepth = maxDepth;
+        materializeHelper(this.rootNode, new StringBuilder(), maxDepth, k);
+    }
+
+    /*
+     * This method is a helper function for materialize(). It stores the k
+     * heaviest words under node (or clears the list when k is 0) for every node
+     * down to maxDepth.
+     * 
+     * @param node the current node
+     * @param word the string of node, its length is the depth of node,
+     *             restored before returning
+     * @param maxDepth the deepest node that gets a list
+     * @param k the number of words to store
+     * @return the list stored on node
+     */
+    private Term[] materializeHelper(Node node, StringBuilder word, int maxDepth, int k) {
+        int depth = word.length();
+        if (k == 0) {
+            node.setTopTerms(null);
+            if (depth < maxDepth) {
+                for (int c = node.nextLetter(0); c >= 0; c = node.nextLetter(c + 1)) {
+                    materializeHelper(node.getChild(c), word, maxDepth, 0);
                 }
-            } 
+            }
+            return null;
+        }
+
+        List<ITerm> container = new ArrayList<ITerm>();
+        if (depth == maxDepth) {
+            topHelper(node, word, k, container, null);
+        } else {
+            if (node.isWord()) {
+                container.add(new Term(word.toString(), node.getWeight()));
+            }
+            for (int c = node.nextLetter(0); c >= 0; c = node.nextLetter(c + 1)) {
+                word.append(Node.symbol(c));
+                Collections.addAll(container,
+                        materializeHelper(node.getChild(c), word, maxDepth, k));
+                word.setLength(depth);
+            }
+            Collections.sort(container, BY_WEIGHT_THEN_TERM);
+            if (container.size() > k) {
+                container = container.subList(0, k);
+            }
+        }
+
+        Term[] stored = container.toArray(new Term[container.size()]);
+        node.setTopTerms(stored);
+        return stored;
+    }
+
+    /*
+     * This method is a helper function for getTopSuggestions(). The frontier holds
+     * both subtrees (ranked by their max weight) and words (ranked by their own
+     * weight); a word is only polled once nothing left in the frontier can beat it.
+     * Subtrees whose max weight is below the k-th best word seen so far are never
+     * added, which keeps the frontier bounded. Equal weights are broken by path,
+     * see Candidate, so a trie of equal weights is walked like a depth-first
+     * listing and stops after k words.
+     * 
+     * @param node the node that has the last letter of the prefix
+     * @param prefix the string of node, read before returning
+     * @param k the number of terms wanted
+     * @param container is the list that the terms are added to, heaviest first
+     * @param trace receives the work done, or null
+     */
+    private void topHelper(Node node, CharSequence prefix, int k, List<ITerm> container,
+            QueryTrace trace) {
+        PriorityQueue<Candidate> frontier = new PriorityQueue<Candidate>();
+        //min-heap of the k best word weights pushed so far
+        PriorityQueue<Long> best = new PriorityQueue<Long>();
+
+        frontier.add(new Candidate(node, null, null, node.getMaxWeight()));
+
+        while (!frontier.isEmpty() && container.size() < k) {
+            Candidate next = frontier.poll();
+
+            if (next.term != null) {
+                container.add(next.term);
+                continue;
+            }
+
+            Node parent = next.node;
+            if (trace != null) {
+                trace.nodesVisited++;
+                trace.maxFrontier = Math.max(trace.maxFrontier, frontier.size() + 1);
+            }
+            if (parent.isWord()) {
+                //the word is spelled only now that it may be returned
+                Term term = new Term(LetterPath.spell(prefix, next.path), parent.getWeight());
+                frontier.add(new Candidate(null, next.path, term, term.getWeight()));
+                best.add(term.getWeight());
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+
+            long floor = best.size() == k ? best.peek() : Long.MIN_VALUE;
+            for (int c = parent.nextLetter(0); c >= 0; c = parent.nextLetter(c + 1)) {
+                Node child = parent.getChild(c);
+                if (child.getMaxWeight() >= floor) {
+                    frontier.add(new Candidate(child, new LetterPath(next.path, c), null,
+                            child.getMaxWeight()));
+                } else if (trace != null) {
+                    trace.branchesPruned++;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method returns the k best words that start with a string within
+     * maxEdits insertions, deletions or substitutions of prefix, so a typo in
+     * the prefix still finds its words. A word is ranked by its weight divided
+     * by EDIT_PENALTY once per edit; the returned terms keep their own weight.
+     * 
+     * The trie is walked in lockstep with a Levenshtein automaton for prefix,
+     * simulated by one row of edit distances per node (the distance from
+     * every prefix of prefix to the node's string). A branch is dropped as
+     * soon as no cell of its row is within maxEdits. The walk is best-first
+     * on an upper bound of the rank, the max weight of the subtree divided by
+     * the penalty of the fewest edits it can still reach, so the branches
+     * that cannot beat the k-th word found are never expanded.
+     * 
+     * @param prefix the prefix as typed
+     * @param maxEdits the largest number of edits allowed, 1 or 2 in practice
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects, best ranked first. Return an
+     *         empty list if there are none.
+     */
+    public List<ITerm> getFuzzySuggestions(String prefix, int maxEdits, int k) {
+        List<ITerm> container = new ArrayList<ITerm>();
+
+        if (prefix == null || maxEdits < 0 || k <= 0) {
+            return container;
         }
 
-        Collections.sort(container);
+        int length = prefix.length();
+        int[] first = new int[length + 1];
+        for (int i = 0; i <= length; i++) {
+            first[i] = i;
+        }
+
+        PriorityQueue<FuzzyCandidate> frontier = new PriorityQueue<FuzzyCandidate>();
+        //min-heap of the k best word ranks pushed so far
+        PriorityQueue<Double> best = new PriorityQueue<Double>();
+        frontier.add(new FuzzyCandidate(this.rootNode, null, null, first, length,
+                rank(this.rootNode.getMaxWeight(), Math.min(length, minimum(first)))));
+
+        while (!frontier.isEmpty() && container.size() < k) {
+            FuzzyCandidate next = frontier.poll();
+
+            if (next.term != null) {
+                container.add(next.term);
+                continue;
+            }
+
+            Node node = next.node;
+            if (node.isWord() && next.edits <= maxEdits) {
+                Term term = new Term(LetterPath.spell("", next.path), node.getWeight());
+                double score = rank(term.getWeight(), next.edits);
+                frontier.add(new FuzzyCandidate(null, next.path, term, null, next.edits, score));
+                best.add(score);
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
 
+            double floor = best.size() == k ? best.peek() : Double.NEGATIVE_INFINITY;
+            for (int c = node.nextLetter(0); c >= 0; c = node.nextLetter(c + 1)) {
+                Node child = node.getChild(c);
+                int[] row = step(next.row, prefix, Node.symbol(c));
+                //the fewest edits of any word below child
+                int edits = Math.min(next.edits, row[length]);
+                int reachable = Math.min(edits, minimum(row));
+                if (reachable > maxEdits) {
+                    continue;
+                }
+                double bound = rank(child.getMaxWeight(), reachable);
+                if (bound >= floor) {
+                    frontier.add(new FuzzyCandidate(child, new LetterPath(next.path, c), null,
+                            row, edits, bound));
+                }
+            }
+        }
         return container;
     }
-    
+
     /*
-     * This method is a helper function for getSuggestions()
+     * This method is a helper function for getFuzzySuggestions(), one step of
+     * the Levenshtein automaton
      * 
-     * @param the node that has the last letter of the prefix 
-     * @param container is the list that stores all the string words of the terms
+     * @param row the edit distances from every prefix of prefix to a string s
+     * @param prefix the prefix as typed
+     * @param letter the next letter
+     * @return the edit distances from every prefix of prefix to s + letter
      */
-    private void suggestHelper(Node node, List<ITerm> container) {
-        if (node.getTerm() != null) {
-            container.add(node.getTerm());
+    private static int[] step(int[] row, String prefix, char letter) {
+        int[] next = new int[row.length];
+        next[0] = row[0] + 1;
+        for (int i = 1; i < row.length; i++) {
+            int substitute = row[i - 1] + (prefix.charAt(i - 1) == letter ? 0 : 1);
+            next[i] = Math.min(substitute, Math.min(row[i] + 1, next[i - 1] + 1));
         }
+        return next;
+    }
+
+    private static int minimum(int[] row) {
+        int min = row[0];
+        for (int i = 1; i < row.length; i++) {
+            min = Math.min(min, row[i]);
+        }
+        return min;
+    }
 
-        for (int i = 0; i <= 25; i++) {
-            if (node.getReference()[i] != null) {
-                suggestHelper(node.getReference()[i], container);
+    /*
+     * @return the rank of a word of the given weight found with edits edits
+     */
+    private static double rank(long weight, int edits) {
+        return weight / Math.pow(EDIT_PENALTY, edits);
+    }
+
+    /**
+     * This method returns the words that start with the given prefix lazily,
+     * heaviest first and in lexicographic order on equal weight. Only the
+     * part of the subtree needed for the words read so far is walked.
+     * 
+     * @param prefix
+     * @return an iterator over the words starting with prefix, empty if there
+     *         are none or prefix is null
+     */
+    public SuggestionIterator iterateSuggestions(String prefix) {
+        return new SuggestionIterator(locate(prefix), prefix, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Same as iterateSuggestions(), as a sequential Stream, for instance
+     * streamSuggestions(prefix).limit(10)
+     * 
+     * @param prefix
+     * @return the words starting with prefix, heaviest first, none if prefix
+     *         is null
+     */
+    public Stream<ITerm> streamSuggestions(String prefix) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                iterateSuggestions(prefix), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * This method returns one page of the words that start with the given
+     * prefix, in the order of iterateSuggestions(). The first page is asked
+     * for with a null token, and every page carries the token of the next.
+     * 
+     * The token is opaque to the caller. It holds the prefix and the weight
+     * and word of the last term of the page, so a page needs no state kept
+     * between requests and resumes right after the previous one. Words added
+     * between two pages are returned if they come after the resume point.
+     * 
+     * Each page walks the trie again from the prefix down to its resume
+     * point, so page n costs about as much as reading the first n pages with
+     * iterateSuggestions(); to read many pages in a row, keep an iterator.
+     * 
+     * @param prefix
+     * @param pageSize the number of terms per page
+     * @param token null for the first page, or getNextToken() of the
+     *              previous page
+     * @return the page, with a null next token on the last page, empty if
+     *         prefix is null
+     * @throws IllegalArgumentException if the token is not one returned for
+     *         this prefix
+     */
+    public SuggestionPage getSuggestionPage(String prefix, int pageSize, String token) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+
+        long afterWeight = Long.MAX_VALUE;
+        String afterTerm = null;
+        if (token != null) {
+            String[] fields = decodeToken(token);
+            if (!fields[0].equals(prefix)) {
+                throw new IllegalArgumentException("the token is for another prefix");
             }
-        } 
+            afterWeight = Long.parseLong(fields[1]);
+            afterTerm = fields[2];
+        }
+
+        SuggestionIterator iterator = new SuggestionIterator(locate(prefix), prefix,
+                afterWeight, afterTerm);
+        List<ITerm> terms = new ArrayList<ITerm>(pageSize);
+        while (terms.size() < pageSize && iterator.hasNext()) {
+            terms.add(iterator.next());
+        }
+
+        String next = null;
+        if (terms.size() == pageSize && iterator.hasNext()) {
+            ITerm last = terms.get(pageSize - 1);
+            next = encodeToken(prefix, last.getWeight(), last.getTerm());
+        }
+        return new SuggestionPage(terms, next);
     }
-    
+
+    /*
+     * @return the fields of a getSuggestionPage() token as Base64 text
+     */
+    private static String encodeToken(String prefix, long weight, String term) {
+        String fields = prefix + "\n" + weight + "\n" + term;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(fields.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+     * @return the prefix, weight and word held by a getSuggestionPage() token
+     * @throws IllegalArgumentException if token was not made by encodeToken()
+     */
+    private static String[] decodeToken(String token) {
+        String[] fields;
+        try {
+            fields = new String(Base64.getUrlDecoder().decode(token),
+                    StandardCharsets.UTF_8).split("\n", -1);
+            if (fields.length == 3) {
+                Long.parseLong(fields[1]);
+                return fields;
+            }
+        } catch (IllegalArgumentException e) {
+            //not Base64, or not a weight, both reported below
+        }
+        throw new IllegalArgumentException("invalid page token: " + token);
+    }
+
+    /**
+     * Answers getTopSuggestions(prefix, k) for many prefixes at once, on as
+     * many threads as there are processors, see
+     * getSuggestionsBatch(prefixes, k, parallelism)
+     * 
+     * @param prefixes the prefixes, in any order
+     * @param k the maximum number of terms per prefix
+     * @return the top k terms of every distinct prefix, in lexicographic
+     *         order of the prefixes
+     */
+    public Map<String, List<ITerm>> getSuggestionsBatch(Collection<String> prefixes, int k) {
+        return getSuggestionsBatch(prefixes, k, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Answers getTopSuggestions(prefix, k) for many prefixes at once. The
+     * prefixes are sorted and split into contiguous ranges, one fork-join
+     * task each. A task walks its range in order with one AutocompleteCursor,
+     * so a prefix only walks the letters after its common prefix with the
+     * previous one and neighbouring prefixes share the path above them.
+     * 
+     * @param prefixes the prefixes, in any order
+     * @param k the maximum number of terms per prefix
+     * @param parallelism the number of threads answering prefixes
+     * @return the top k terms of every distinct prefix, in lexicographic
+     *         order of the prefixes
+     */
+    public Map<String, List<ITerm>> getSuggestionsBatch(Collection<String> prefixes, int k,
+            int parallelism) {
+        String[] sorted = new String[prefixes.size()];
+        int count = 0;
+        for (String prefix : prefixes) {
+            if (prefix != null) {
+                sorted[count++] = prefix;
+            }
+        }
+        Arrays.sort(sorted, 0, count);
+
+        //drop the duplicates
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || !sorted[i].equals(sorted[distinct - 1])) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<ITerm>[] results = new List[distinct];
+        BatchTask all = new BatchTask(sorted, results, 0, distinct, k);
+        if (parallelism <= 1 || distinct <= BatchTask.LEAF_SIZE) {
+            all.compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(all);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        Map<String, List<ITerm>> batch = new LinkedHashMap<String, List<ITerm>>(2 * distinct);
+        for (int i = 0; i < distinct; i++) {
+            batch.put(sorted[i], results[i]);
+        }
+        return batch;
+    }
+
+    /**
+     * Opens a cursor at the root, to follow a prefix one character at a time
+     * as it is typed instead of walking it from the root on every keystroke
+     * 
+     * @return a cursor on the empty prefix
+     */
+    public AutocompleteCursor openCursor() {
+        return new AutocompleteCursor(this);
+    }
+
+    /**
+     * Copies the trie into an immutable, array-backed FrozenAutocomplete for
+     * read-only serving. This trie is left unchanged and can be dropped once
+     * the copy is made.
+     * 
+     * @return a FrozenAutocomplete holding the same words
+     */
+    public FrozenAutocomplete freeze() {
+        return new FrozenAutocomplete(this.rootNode, countNodes(), this.numSuggest);
+    }
+
+    /**
+     * Writes the trie to a snapshot file that MappedAutocomplete.open() can
+     * query at the next start without calling buildTrie() again
+     * 
+     * @param file the snapshot file, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        freeze().writeSnapshot(file);
+    }
+
+    /**
+     * @return the number of Nodes in the trie, the root included
+     */
+    public int countNodes() {
+        return countHelper(this.rootNode);
+    }
+
+    /*
+     * This method is a helper function for countNodes()
+     * 
+     * @param node the root of the subtree to count
+     * @return the number of Nodes in the subtree
+     */
+    private int countHelper(Node node) {
+        int count = 1;
+        for (int c = node.nextLetter(0); c >= 0; c = node.nextLetter(c + 1)) {
+            count += countHelper(node.getChild(c));
+        }
+        return count;
+    }
+
+    /**
+     * @return an estimate in bytes of the heap used by the Nodes of the trie,
+     *         their child arrays and materialized lists, not counting the
+     *         Terms held by the lists
+     */
+    public long estimateHeapBytes() {
+        return heapHelper(this.rootNode);
+    }
+
+    /*
+     * This method is a helper function for estimateHeapBytes()
+     * 
+     * @param node the root of the subtree to measure
+     * @return the estimated size of the subtree
+     */
+    private long heapHelper(Node node) {
+        long bytes = node.estimateShallowBytes();
+        if (node.getTopTerms() != null) {
+            bytes += HeapEstimate.array(node.getTopTerms().length, HeapEstimate.REFERENCE);
+        }
+
+        for (int c = node.nextLetter(0); c >= 0; c = node.nextLetter(c + 1)) {
+            bytes += heapHelper(node.getChild(c));
+        }
+        return bytes;
+    }
+
     /*
      * This returns the root Node 
      * @return root node of the trie
@@ -386,8 +1275,120 @@ public class Autocomplete implements IAutocomplete {
         this.rootNode = rootNode;
     }
 
-}
+    /*
+     * Answers the sorted prefixes in [from, to) for getSuggestionsBatch(),
+     * splitting the range in halves down to LEAF_SIZE prefixes
+     */
+    private class BatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private static final int LEAF_SIZE = 256;
+
+        private final String[] prefixes;
+        private final List<ITerm>[] results;
+        private final int from;
+        private final int to;
+        private final int k;
+
+        BatchTask(String[] prefixes, List<ITerm>[] results, int from, int to, int k) {
+            this.prefixes = prefixes;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+        }
 
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE && getPool() != null) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchTask(prefixes, results, from, middle, k),
+                        new BatchTask(prefixes, results, middle, to, k));
+                return;
+            }
+
+            AutocompleteCursor cursor = openCursor();
+            for (int i = from; i < to; i++) {
+                cursor.moveTo(prefixes[i]);
+                results[i] = cursor.top(k);
+            }
+        }
+    }
+
+    /*
+     * An entry of the getFuzzySuggestions() frontier: a subtree with the
+     * automaton row of its node, ranked by an upper bound, or a single word,
+     * ranked exactly. Ties are broken as in Candidate.
+     */
+    private static class FuzzyCandidate implements Comparable<FuzzyCandidate> {
 
+        private final Node node;
+        private final LetterPath path;
+        private final Term term;
+        private final int[] row;
+        //the fewest edits from prefix to a prefix of the node's string
+        private final int edits;
+        private final double score;
 
+        FuzzyCandidate(Node node, LetterPath path, Term term, int[] row, int edits,
+                double score) {
+            this.node = node;
+            this.path = path;
+            this.term = term;
+            this.row = row;
+            this.edits = edits;
+            this.score = score;
+        }
 
+        @Override
+        public int compareTo(FuzzyCandidate that) {
+            if (this.score != that.score) {
+                return this.score > that.score ? -1 : 1;
+            }
+            int order = LetterPath.compare(this.path, that.path);
+            if (order != 0) {
+                return order;
+            }
+            //a node before its own word, which only exists once it is expanded
+            return (this.term == null ? 0 : 1) - (that.term == null ? 0 : 1);
+        }
+    }
+
+    /*
+     * An entry of the getTopSuggestions() frontier: either a subtree, ranked by
+     * its max weight, or a single word, ranked by its weight. On equal weight
+     * the entries go in the order of their paths, so a subtree comes before
+     * the words it sorts before and after the others: words of equal weight
+     * come out in lexicographic order, and a tied word is returned without
+     * expanding the tied subtrees that sort after it.
+     */
+    private static class Candidate implements Comparable<Candidate> {
+
+        private final Node node;
+        //the letters from the node of the prefix down to node
+        private final LetterPath path;
+        private final Term term;
+        private final long weight;
+
+        Candidate(Node node, LetterPath path, Term term, long weight) {
+            this.node = node;
+            this.path = path;
+            this.term = term;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(Candidate that) {
+            if (this.weight != that.weight) {
+                return this.weight > that.weight ? -1 : 1;
+            }
+            int order = LetterPath.compare(this.path, that.path);
+            if (order != 0) {
+                return order;
+            }
+            //a node before its own word, which only exists once it is expanded
+            return (this.term == null ? 0 : 1) - (that.term == null ? 0 : 1);
+        }
+    }
+
+}
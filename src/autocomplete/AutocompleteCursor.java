@@ -0,0 +1,146 @@
+package autocomplete;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A prefix being typed into an Autocomplete, made by
+ * Autocomplete.openCursor().
+ *
+ * The cursor keeps the node of every prefix of its text on a stack, so
+ * advance() is one child lookup from the current node and backspace() pops
+ * the stack, where getSuggestions(text) would walk the whole text from the
+ * root again. Once a character has no child (or is not a-z) the text no
+ * longer matches: further characters are only recorded, until backspace()
+ * gets back to a matching prefix.
+ *
+ * The stack holds nodes of the trie, so words added afterwards are seen
+ * below the current node. A cursor is not thread-safe.
+ *
+ * @author Daniel Xu
+ */
+public class AutocompleteCursor {
+
+    private final Autocomplete trie;
+    private final StringBuilder text;
+    //path[d] is the node of the first d characters, for d <= matched
+    private Node[] path;
+    private int matched;
+
+
+    /*
+     * @param trie the trie the cursor walks, starting at its root
+     */
+    AutocompleteCursor(Autocomplete trie) {
+        this.trie = trie;
+        this.text = new StringBuilder();
+        this.path = new Node[16];
+        this.path[0] = trie.getRootNode();
+        this.matched = 0;
+    }
+
+    /**
+     * Types one more character
+     *
+     * @param c the character
+     * @return whether the text still matches a prefix in the trie
+     */
+    public boolean advance(char c) {
+        text.append(c);
+        if (matched == text.length() - 1 && c >= 'a' && c <= 'z') {
+            Node child = path[matched].getChild(c - 97);
+            if (child != null) {
+                if (matched + 1 == path.length) {
+                    path = Arrays.copyOf(path, path.length * 2);
+                }
+                path[++matched] = child;
+            }
+        }
+        return matches();
+    }
+
+    /**
+     * Removes the last character
+     *
+     * @return false if the text was already empty
+     */
+    public boolean backspace() {
+        if (text.length() == 0) {
+            return false;
+        }
+        if (matched == text.length()) {
+            path[matched--] = null;
+        }
+        text.setLength(text.length() - 1);
+        return true;
+    }
+
+    /**
+     * Moves the cursor to text, keeping the longest common prefix of the
+     * old and new text and only undoing and typing the characters after it
+     *
+     * @param newText the new text
+     * @return whether the new text matches a prefix in the trie
+     */
+    public boolean moveTo(CharSequence newText) {
+        int common = 0;
+        int max = Math.min(text.length(), newText.length());
+        while (common < max && text.charAt(common) == newText.charAt(common)) {
+            common++;
+        }
+        while (text.length() > common) {
+            backspace();
+        }
+        for (int i = common; i < newText.length(); i++) {
+            advance(newText.charAt(i));
+        }
+        return matches();
+    }
+
+    /**
+     * Clears the text
+     */
+    public void reset() {
+        Arrays.fill(path, 1, matched + 1, null);
+        matched = 0;
+        text.setLength(0);
+    }
+
+    /**
+     * @return the text typed so far
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * @return whether the text matches a prefix in the trie
+     */
+    public boolean matches() {
+        return matched == text.length();
+    }
+
+    /**
+     * @return the number of words that start with the text
+     */
+    public int countPrefixes() {
+        return matches() ? path[matched].getPrefixes() : 0;
+    }
+
+    /**
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects starting with the text,
+     *         sorted by descending weight, see Autocomplete.getTopSuggestions()
+     */
+    public List<ITerm> top(int k) {
+        return trie.topSuggestionsAt(matches() ? path[matched] : null, text, k);
+    }
+
+    /**
+     * @return a List containing all the ITerm objects starting with the text,
+     *         in lexicographic order
+     */
+    public List<ITerm> getSuggestions() {
+        return trie.suggestionsAt(matches() ? path[matched] : null, text);
+    }
+
+}
@@ -0,0 +1,52 @@
+package autocomplete;
+
+/**
+ * The management interface of InstrumentedAutocomplete, registered with
+ * the platform MBeanServer by InstrumentedAutocomplete.register().
+ *
+ * @author Daniel Xu
+ */
+public interface AutocompleteMetricsMXBean {
+
+    /**
+     * @return the metrics of getSubTrie()
+     */
+    public OperationStats getSubTrieStats();
+
+    /**
+     * @return the metrics of countPrefixes()
+     */
+    public OperationStats getCountPrefixesStats();
+
+    /**
+     * @return the metrics of getSuggestions()
+     */
+    public OperationStats getSuggestionsStats();
+
+    /**
+     * @return the metrics of getTopSuggestions()
+     */
+    public OperationStats getTopSuggestionsStats();
+
+    /**
+     * @return one in how many queries is measured
+     */
+    public int getSampleInterval();
+
+    /**
+     * @param interval one in how many queries to measure, 1 for all of them
+     */
+    public void setSampleInterval(int interval);
+
+    /**
+     * Forgets every query measured so far
+     */
+    public void reset();
+
+    /**
+     * @param prefix
+     * @param k the maximum number of terms
+     * @return the report of InstrumentedAutocomplete.explain(prefix, k)
+     */
+    public String explainQuery(String prefix, int k);
+}
@@ -0,0 +1,267 @@
+package autocomplete;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A cache of query results in front of any IAutocomplete.
+ *
+ * getTopSuggestions() for up to k terms and getSuggestions() are answered
+ * from a TinyLfuCache keyed by prefix. The top-k list is always computed for
+ * the k given to the constructor, so every smaller k is served by the same
+ * entry. The memory bound is a number of cached terms, each entry weighing
+ * the size of its list, and eviction is frequency-aware (W-TinyLFU) so the
+ * few thousand short prefixes that get most of the traffic stay cached.
+ *
+ * addWord() only invalidates the entries whose prefix is on the path of the
+ * new word, since those are the only results it can change. buildTrie()
+ * clears the cache.
+ *
+ * The cache is thread-safe if the wrapped trie is. A result computed while a
+ * word is being added is returned but not cached, so a stale list is never
+ * kept.
+ *
+ * @author Daniel Xu
+ */
+public class CachingAutocomplete implements IAutocomplete {
+
+    private final IAutocomplete delegate;
+    private final int cachedK;
+    private final TinyLfuCache<Key, List<ITerm>> cache;
+    private final Object lock;
+    //bumped by every write, a result computed across a write is not cached
+    private long generation;
+    private long invalidations;
+
+
+    /*
+     * @param delegate the trie answering the misses
+     * @param cachedK the number of terms cached per prefix for
+     *                getTopSuggestions(), larger requests are not cached
+     * @param maxTerms the largest number of terms held by the cache
+     */
+    public CachingAutocomplete(IAutocomplete delegate, int cachedK, long maxTerms) {
+        if (cachedK <= 0) {
+            throw new IllegalArgumentException("cachedK must be positive: " + cachedK);
+        }
+        this.delegate = delegate;
+        this.cachedK = cachedK;
+        this.cache = new TinyLfuCache<Key, List<ITerm>>(maxTerms);
+        this.lock = new Object();
+        this.generation = 0;
+        this.invalidations = 0;
+    }
+
+    /**
+     * Adds the word to the wrapped trie and invalidates the cached results of
+     * every prefix of the word
+     *
+     * @param word the word to be added to the Trie
+     * @param weight the weight of the word
+     */
+    @Override
+    public void addWord(String word, long weight) {
+        delegate.addWord(word, weight);
+        if (!Autocomplete.isWord(word)) {
+            return;
+        }
+
+        synchronized (lock) {
+            generation++;
+            for (int i = 0; i <= word.length(); i++) {
+                String prefix = word.substring(0, i);
+                if (cache.remove(new Key(prefix, false))) {
+                    invalidations++;
+                }
+                if (cache.remove(new Key(prefix, true))) {
+                    invalidations++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the wrapped trie and clears the cache
+     *
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @return the root of the wrapped trie
+     */
+    @Override
+    public Node buildTrie(String filename, int k) {
+        Node root = delegate.buildTrie(filename, k);
+        synchronized (lock) {
+            generation++;
+            invalidations += cache.size();
+            cache.clear();
+        }
+        return root;
+    }
+
+    /**
+     * @return k the the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return delegate.numberSuggestions();
+    }
+
+    /**
+     * Not cached
+     *
+     * @param prefix
+     * @return the root of the subTrie of prefix in the wrapped trie
+     */
+    @Override
+    public Node getSubTrie(String prefix) {
+        return delegate.getSubTrie(prefix);
+    }
+
+    /**
+     * Not cached, a prefix count is a single walk
+     *
+     * @param prefix
+     * @return the number of words that start with prefix.
+     */
+    @Override
+    public int countPrefixes(String prefix) {
+        return delegate.countPrefixes(prefix);
+    }
+
+    /**
+     * @param prefix
+     * @return a List containing all the ITerm objects with query starting with
+     *         prefix, from the cache when it holds them
+     */
+    @Override
+    public List<ITerm> getSuggestions(String prefix) {
+        if (prefix == null) {
+            return delegate.getSuggestions(prefix);
+        }
+        return lookup(new Key(prefix, true), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects starting with prefix, sorted by
+     *         descending weight, from the cache when k is at most the cached k
+     */
+    @Override
+    public List<ITerm> getTopSuggestions(String prefix, int k) {
+        if (prefix == null || k <= 0 || k > cachedK) {
+            return delegate.getTopSuggestions(prefix, k);
+        }
+        return lookup(new Key(prefix, false), k);
+    }
+
+    /*
+     * @return a copy of the first limit terms of the cached list of key,
+     *         computed and cached on a miss
+     */
+    private List<ITerm> lookup(Key key, int limit) {
+        long seen;
+        synchronized (lock) {
+            List<ITerm> cached = cache.get(key);
+            if (cached != null) {
+                return copy(cached, limit);
+            }
+            seen = generation;
+        }
+
+        List<ITerm> computed = key.all ? delegate.getSuggestions(key.prefix)
+                : delegate.getTopSuggestions(key.prefix, cachedK);
+        synchronized (lock) {
+            if (generation == seen) {
+                cache.put(key, computed, Math.max(1, computed.size()));
+            }
+        }
+        return copy(computed, limit);
+    }
+
+    private static List<ITerm> copy(List<ITerm> terms, int limit) {
+        return new ArrayList<ITerm>(terms.subList(0, Math.min(limit, terms.size())));
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        synchronized (lock) {
+            return cache.hits();
+        }
+    }
+
+    /**
+     * @return the number of lookups passed on to the wrapped trie
+     */
+    public long getMissCount() {
+        synchronized (lock) {
+            return cache.misses();
+        }
+    }
+
+    /**
+     * @return the number of entries dropped to stay within the size bound
+     */
+    public long getEvictionCount() {
+        synchronized (lock) {
+            return cache.evictions();
+        }
+    }
+
+    /**
+     * @return the number of entries dropped by addWord() and buildTrie()
+     */
+    public long getInvalidationCount() {
+        synchronized (lock) {
+            return invalidations;
+        }
+    }
+
+    /**
+     * @return the number of cached lists
+     */
+    public int getCachedEntries() {
+        synchronized (lock) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return the number of cached terms, bounded by maxTerms
+     */
+    public long getCachedTerms() {
+        synchronized (lock) {
+            return cache.weight();
+        }
+    }
+
+    /*
+     * A cache key: a prefix and which of the two queries it is for
+     */
+    private static final class Key {
+
+        private final String prefix;
+        private final boolean all;
+
+        Key(String prefix, boolean all) {
+            this.prefix = prefix;
+            this.all = all;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (that instanceof Key) {
+                Key other = (Key) that;
+                return this.all == other.all && this.prefix.equals(other.prefix);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * prefix.hashCode() + (all ? 1 : 0);
+        }
+    }
+
+}
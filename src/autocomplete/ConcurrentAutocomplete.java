@@ -0,0 +1,290 @@
+package autocomplete;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A trie that can be queried by any number of threads while words are being
+ * added to it.
+ *
+ * Readers never lock. The trie is a sequence of immutable versions, and every
+ * query runs on the version published when it started, so it never sees a
+ * half added word or counts that disagree with the children.
+ *
+ * Writers are serialized and never change a published node. Adding a word
+ * copies the nodes on its path (Node.copy(), which gives the copy its own
+ * child array), updates the copies and publishes the new root with a single
+ * atomic set. Every node off the path is shared with the previous version.
+ * A batch of words, such as a file given to buildTrie(), copies each node at
+ * most once and is published as one version.
+ *
+ * Materialized lists (Autocomplete.materialize()) are not kept: they would
+ * have to be rebuilt in every version.
+ *
+ * @author Daniel Xu
+ */
+public class ConcurrentAutocomplete implements IAutocomplete {
+
+    //the published version, its nodes are never written again
+    private final AtomicReference<Autocomplete> current;
+    private final Object writeLock;
+    private long version;
+
+
+    /*
+     * This the constructor for the class, the trie starts empty
+     */
+    public ConcurrentAutocomplete() {
+        this.current = new AtomicReference<Autocomplete>(new Autocomplete());
+        this.writeLock = new Object();
+        this.version = 0;
+    }
+
+    /**
+     * Adds a new word with its associated weight and publishes the new
+     * version. Queries already running keep using the previous one.
+     *
+     * @param word the word to be added to the Trie
+     * @param weight the weight of the word
+     */
+    @Override
+    public void addWord(String word, long weight) {
+        if (!Autocomplete.isWord(word)) {
+            return;
+        }
+        synchronized (writeLock) {
+            Writer writer = new Writer(current.get().getRootNode());
+            writer.accept(word, weight);
+            publish(writer.root, current.get().numberSuggestions());
+        }
+    }
+
+    /**
+     * Adds every word of the batch and publishes them as a single version
+     *
+     * @param words the words to be added
+     * @param weights the weight of each word
+     * @throws IllegalArgumentException if the two lists differ in size
+     */
+    public void addWords(List<String> words, List<Long> weights) {
+        if (words.size() != weights.size()) {
+            throw new IllegalArgumentException(words.size() + " words but "
+                    + weights.size() + " weights");
+        }
+        synchronized (writeLock) {
+            Writer writer = new Writer(current.get().getRootNode());
+            for (int i = 0; i < words.size(); i++) {
+                writer.accept(words.get(i), weights.get(i));
+            }
+            publish(writer.root, current.get().numberSuggestions());
+        }
+    }
+
+    /*
+     * Adds every word of terms and publishes them as a single version
+     */
+    void addWords(TermBuffer terms) {
+        synchronized (writeLock) {
+            Writer writer = new Writer(current.get().getRootNode());
+            for (int i = 0; i < terms.size(); i++) {
+                writer.accept(terms.word(i), terms.weight(i));
+            }
+            publish(writer.root, current.get().numberSuggestions());
+        }
+    }
+
+    /**
+     * Reads the file the same way as Autocomplete.buildTrie() and adds its
+     * words as a single version, so readers see either none or all of them
+     *
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @return the root of the new version, which must not be changed
+     */
+    @Override
+    public Node buildTrie(String filename, int k) {
+        synchronized (writeLock) {
+            Writer writer = new Writer(current.get().getRootNode());
+            Autocomplete.readTerms(filename, writer);
+            publish(writer.root, k);
+            return writer.root;
+        }
+    }
+
+    /*
+     * Makes root the current version. Called with the write lock held.
+     */
+    private void publish(Node root, int numSuggest) {
+        current.set(new Autocomplete(root, numSuggest));
+        version++;
+    }
+
+    /**
+     * @return the number of versions published so far
+     */
+    public long getVersion() {
+        synchronized (writeLock) {
+            return version;
+        }
+    }
+
+    /**
+     * @return k the the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return current.get().numberSuggestions();
+    }
+
+    /**
+     * @param prefix
+     * @return the root of the subTrie corresponding to the last character of
+     *         the prefix in the current version. It is shared with later
+     *         versions and must not be changed.
+     */
+    @Override
+    public Node getSubTrie(String prefix) {
+        return current.get().getSubTrie(prefix);
+    }
+
+    /**
+     * @param prefix
+     * @return the number of words that start with prefix
+     */
+    @Override
+    public int countPrefixes(String prefix) {
+        return current.get().countPrefixes(prefix);
+    }
+
+    /**
+     * @param prefix
+     * @return a List containing all the ITerm objects with query starting with
+     *         prefix, in lexicographic order
+     */
+    @Override
+    public List<ITerm> getSuggestions(String prefix) {
+        return current.get().getSuggestions(prefix);
+    }
+
+    /**
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects starting with prefix, sorted by
+     *         descending weight
+     */
+    @Override
+    public List<ITerm> getTopSuggestions(String prefix, int k) {
+        return current.get().getTopSuggestions(prefix, k);
+    }
+
+    /**
+     * @return an immutable, array-backed copy of the current version
+     */
+    public FrozenAutocomplete freeze() {
+        return current.get().freeze();
+    }
+
+    /**
+     * @return the number of Nodes in the current version, root included
+     */
+    public int countNodes() {
+        return current.get().countNodes();
+    }
+
+    /*
+     * @return whether word was added to the current version
+     */
+    boolean contains(String word) {
+        Node node = current.get().getSubTrie(word);
+        return node != null && node.getWords() > 0;
+    }
+
+    /*
+     * Adds every word of the current version to buffer in lexicographic
+     * order, a word added n times is added n times
+     */
+    void collectWords(TermBuffer buffer) {
+        collectHelper(current.get().getRootNode(), new StringBuilder(), buffer);
+    }
+
+    /*
+     * This method is a helper function for collectWords()
+     *
+     * @param word the string of node, restored before returning
+     */
+    private static void collectHelper(Node node, StringBuilder word, TermBuffer buffer) {
+        if (node.isWord()) {
+            String spelled = word.toString();
+            for (int i = node.getWords(); i > 0; i--) {
+                buffer.add(spelled, node.getWeight());
+            }
+        }
+        for (int c = node.nextLetter(0); c >= 0; c = node.nextLetter(c + 1)) {
+            word.append(Node.symbol(c));
+            collectHelper(node.getChild(c), word, buffer);
+            word.setLength(word.length() - 1);
+        }
+    }
+
+    /*
+     * Builds one new version from a published root. Nodes copied or created
+     * by this writer are not published yet, so they are changed in place;
+     * every other node is copied before it is changed.
+     */
+    private static class Writer implements ObjLongConsumer<String> {
+
+        private final Set<Node> fresh;
+        private Node root;
+
+        Writer(Node published) {
+            this.fresh = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+            this.root = writable(published);
+        }
+
+        @Override
+        public void accept(String word, long weight) {
+            if (!Autocomplete.isWord(word)) {
+                return;
+            }
+            count(root, weight);
+
+            Node parent = root;
+            for (int i = 0; i < word.length(); i++) {
+                int letter = word.charAt(i) - 97;
+                Node child = writable(parent.getChild(letter));
+                count(child, weight);
+                parent.setChild(letter, child);
+                parent = child;
+            }
+
+            parent.setWeight(weight);
+            parent.setWords(parent.getWords() + 1);
+        }
+
+        /*
+         * @return node itself if this writer made it, otherwise a copy of it,
+         *         or a new node if node is null
+         */
+        private Node writable(Node node) {
+            if (node != null && fresh.contains(node)) {
+                return node;
+            }
+            Node copy = node == null ? new Node() : node.copy();
+            fresh.add(copy);
+            return copy;
+        }
+
+        /*
+         * Counts a word of the given weight going through node
+         */
+        private static void count(Node node, long weight) {
+            node.setPrefixes(node.getPrefixes() + 1);
+            node.setMaxWeight(Math.max(node.getMaxWeight(), weight));
+            node.setTopTerms(null);
+        }
+    }
+
+}
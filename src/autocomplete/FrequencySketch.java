@@ -0,0 +1,97 @@
+package autocomplete;
+
+/**
+ * A count-min sketch estimating how often each key was looked up recently,
+ * the frequency filter of TinyLfuCache.
+ *
+ * Every key has one 4-bit counter in each of four rows, picked by four
+ * different hashes, and its estimate is the smallest of the four. Counters
+ * stop at 15 and are packed sixteen to a long, so a row of a cache of n
+ * keys takes about n / 2 bytes. Once 10 times as many lookups as there are counters per row
+ * have been recorded every counter is halved, so old popularity fades and
+ * a key that was hot yesterday does not hold its place forever.
+ *
+ * @author Daniel Xu
+ */
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    //the low three bits of every counter of a long, to halve them all at once
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {0x97cb3127, 0xb8b6f3e1, 0x3c6ef372, 0xa54ff53a};
+
+    //counter i of a row is the nibble at bit 4 * (i % 16) of long i / 16
+    private final long[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+
+    /*
+     * @param expected the number of keys the cache holds, the width of a row
+     *                 is the next power of two
+     */
+    FrequencySketch(int expected) {
+        int width = Integer.highestOneBit(Math.max(16, Math.min(expected, 1 << 24)) - 1) << 1;
+        this.counters = new long[DEPTH][width >>> 4];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+        this.additions = 0;
+    }
+
+    /*
+     * Records one lookup of key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            int shift = (index & 15) << 2;
+            if (((counters[row][index >>> 4] >>> shift) & MAX_COUNT) < MAX_COUNT) {
+                counters[row][index >>> 4] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    /*
+     * @return the estimated number of recent lookups of key, at most 15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            int count = (int) (counters[row][index >>> 4] >>> ((index & 15) << 2)) & MAX_COUNT;
+            min = Math.min(min, count);
+        }
+        return min;
+    }
+
+    /*
+     * Halves every counter
+     */
+    private void reset() {
+        for (long[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (row[i] >>> 1) & RESET_MASK;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(int hash) {
+        hash = (hash ^ (hash >>> 16)) * 0x45d9f3b;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,135 @@
+package autocomplete;
+import java.io.IOException;
+import java.nio.file.Path;
+
+    /*
+     * @Author Daniel Xu
+     */
+
+/**
+ * An immutable, array-backed copy of an Autocomplete trie, made by
+ * Autocomplete.freeze() once the trie is built.
+ *
+ * Every attribute of the Node graph lives in a parallel primitive array
+ * indexed by the preorder number of the node, see ArrayTrie for the layout.
+ * No Node, Term or String is kept per word. All the arrays are final and
+ * never written after the constructor, so any number of threads can query
+ * the same instance without locking.
+ */
+public final class FrozenAutocomplete extends ArrayTrie {
+
+    private final byte[] labels;
+    private final int[] ends;
+    private final int[] parents;
+    private final int[] prefixes;
+    private final long[] weights;
+    private final long[] maxWeights;
+    private final int numSuggest;
+
+    /*
+     * This copies the trie rooted at root into the arrays, see
+     * Autocomplete.freeze()
+     *
+     * @param root the root of the trie
+     * @param size the number of Nodes in the trie
+     * @param numSuggest the number of suggestions given to buildTrie()
+     */
+    FrozenAutocomplete(Node root, int size, int numSuggest) {
+        this.labels = new byte[size];
+        this.ends = new int[size];
+        this.parents = new int[size];
+        this.prefixes = new int[size];
+        this.weights = new long[size];
+        this.maxWeights = new long[size];
+        this.numSuggest = numSuggest;
+
+        freezeHelper(root, (byte) 0, -1, 0);
+    }
+
+    /*
+     * This method is a helper function for the constructor, it writes node
+     * and its subtree starting at index
+     *
+     * @return one past the last index used by the subtree
+     */
+    private int freezeHelper(Node node, byte label, int parent, int index) {
+        labels[index] = label;
+        parents[index] = parent;
+        prefixes[index] = node.getPrefixes();
+        maxWeights[index] = node.getMaxWeight();
+
+        weights[index] = node.getWeight();
+
+        int next = index + 1;
+        for (int c = node.nextLetter(0); c >= 0; c = node.nextLetter(c + 1)) {
+            next = freezeHelper(node.getChild(c), (byte) Node.symbol(c), index, next);
+        }
+        ends[index] = next;
+        return next;
+    }
+
+    /**
+     * @return k the the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return this.numSuggest;
+    }
+
+    /**
+     * Writes the trie to a snapshot file that MappedAutocomplete.open() can
+     * query without reading it into the heap
+     *
+     * @param file the snapshot file, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        TrieSnapshot.write(file, labels, ends, parents, prefixes, weights,
+                maxWeights, numSuggest);
+    }
+
+    /**
+     * @return an estimate in bytes of the heap used by the arrays of the trie
+     */
+    public long estimateHeapBytes() {
+        int size = labels.length;
+        return HeapEstimate.array(size, 1) + 3 * HeapEstimate.array(size, 4)
+                + 2 * HeapEstimate.array(size, 8);
+    }
+
+    @Override
+    int size() {
+        return labels.length;
+    }
+
+    @Override
+    byte label(int node) {
+        return labels[node];
+    }
+
+    @Override
+    int end(int node) {
+        return ends[node];
+    }
+
+    @Override
+    int parent(int node) {
+        return parents[node];
+    }
+
+    @Override
+    int prefixes(int node) {
+        return prefixes[node];
+    }
+
+    @Override
+    long weight(int node) {
+        return weights[node];
+    }
+
+    @Override
+    long maxWeight(int node) {
+        return maxWeights[node];
+    }
+
+}
@@ -0,0 +1,355 @@
+package autocomplete;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A read-only dictionary stored as a minimal weighted finite-state
+ * transducer, see FstBuilder for how it is built.
+ *
+ * A trie only shares prefixes. The transducer also shares suffixes: words
+ * ending in the same letters with the same costs end in the same states,
+ * so an inflected vocabulary ("-ing", "-tion", "-ed") takes far fewer states
+ * than trie nodes. The weights, which differ from word to word, are not
+ * kept on the states but on the arcs, as costs (maxWeight - weight) pushed
+ * towards the start. Following a prefix adds up the cost of the best word
+ * below it, so getTopSuggestions() ranks the frontier with exact bounds.
+ *
+ * Like FrozenAutocomplete, every state and arc is a slot of a few parallel
+ * primitive arrays:
+ * - arcStarts: the arcs of state s are [arcStarts[s], arcStarts[s + 1]),
+ *   sorted by label
+ * - counts: the number of words accepted from the state, duplicates
+ *   included, so the prefix count of a path is the count of its last state
+ * - finalOutputs, finalCounts: the cost added when a word ends at the state
+ *   and how many times that word was added, 0 if no word ends there
+ * - arcLabels, arcOutputs, arcTargets: the letter, cost and next state of
+ *   every arc
+ *
+ * addWord() is not supported; buildTrie() reads, sorts and compiles the
+ * whole file. The arrays are never written after that, so any number of
+ * threads can query a built instance without locking.
+ *
+ * @author Daniel Xu
+ */
+public final class FstAutocomplete implements IAutocomplete {
+
+    private int[] arcStarts;
+    private int[] counts;
+    private long[] finalOutputs;
+    private int[] finalCounts;
+    private byte[] arcLabels;
+    private long[] arcOutputs;
+    private int[] arcTargets;
+    private int root;
+    private long maxWeight;
+    private int numSuggest;
+
+
+    /*
+     * This is the constructor of an empty dictionary, filled by buildTrie()
+     */
+    public FstAutocomplete() {
+        load(new FstBuilder(0), 0);
+    }
+
+    /*
+     * @param builder the builder holding the compiled transducer
+     * @param k the maximum number of suggestions that should be displayed
+     */
+    FstAutocomplete(FstBuilder builder, int k) {
+        load(builder, k);
+    }
+
+    private void load(FstBuilder builder, int k) {
+        builder.compileRoot();
+        this.arcStarts = builder.arcStarts();
+        this.counts = builder.counts();
+        this.finalOutputs = builder.finalOutputs();
+        this.finalCounts = builder.finalCounts();
+        this.arcLabels = builder.arcLabels();
+        this.arcOutputs = builder.arcOutputs();
+        this.arcTargets = builder.arcTargets();
+        this.root = builder.root();
+        this.maxWeight = builder.maxWeight();
+        this.numSuggest = k;
+    }
+
+    /**
+     * The transducer cannot be changed one word at a time, use buildTrie()
+     * or an FstBuilder
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void addWord(String word, long weight) {
+        throw new UnsupportedOperationException("the transducer is read-only");
+    }
+
+    /**
+     * Reads the whole file, sorts its words and compiles them, replacing
+     * every word held before
+     *
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @return a detached Node with the counts of the start state
+     */
+    @Override
+    public Node buildTrie(String filename, int k) {
+        TermBuffer terms = new TermBuffer();
+        Autocomplete.readTerms(filename, terms::add);
+        terms.sortByWord();
+
+        FstBuilder builder = new FstBuilder(terms.maxWeight());
+        for (int i = 0; i < terms.size(); i++) {
+            builder.add(terms.word(i), terms.weight(i));
+        }
+        load(builder, k);
+        return getSubTrie("");
+    }
+
+    /**
+     * @return k the the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return this.numSuggest;
+    }
+
+    /**
+     * @param prefix
+     * @return a detached Node with the weight and counts of the state at the
+     *         end of prefix, or null. Its child array is left empty.
+     */
+    @Override
+    public Node getSubTrie(String prefix) {
+        long[] cost = new long[1];
+        int state = locate(prefix, cost);
+        if (state < 0) {
+            return null;
+        }
+
+        Node result;
+        if (finalCounts[state] > 0) {
+            result = new Node(prefix, maxWeight - cost[0] - finalOutputs[state]);
+            result.setWords(finalCounts[state]);
+        } else {
+            result = new Node();
+        }
+        result.setPrefixes(counts[state]);
+        //the outputs are pushed, so the cost of the path is the best word
+        result.setMaxWeight(counts[state] > 0 ? maxWeight - cost[0] : 0);
+        return result;
+    }
+
+    /**
+     * @param prefix
+     * @return the number of words that start with prefix.
+     */
+    @Override
+    public int countPrefixes(String prefix) {
+        int state = locate(prefix, new long[1]);
+        if (state < 0) {
+            return 0;
+        }
+        return counts[state];
+    }
+
+    /**
+     * @param prefix
+     * @return a List containing all the ITerm objects with query starting with
+     *         prefix, in lexicographic order. Return an empty list if there are
+     *         no ITerm object starting with prefix.
+     */
+    @Override
+    public List<ITerm> getSuggestions(String prefix) {
+        List<ITerm> container = new ArrayList<ITerm>();
+        long[] cost = new long[1];
+        int state = locate(prefix, cost);
+
+        if (state >= 0) {
+            suggestHelper(state, cost[0], new StringBuilder(prefix), container);
+        }
+        return container;
+    }
+
+    /*
+     * This method is a helper function for getSuggestions()
+     *
+     * @param state the current state
+     * @param cost the sum of the outputs on the path to state
+     * @param word the string of the path to state, restored before returning
+     * @param container is the list the words are added to
+     */
+    private void suggestHelper(int state, long cost, StringBuilder word, List<ITerm> container) {
+        if (finalCounts[state] > 0) {
+            container.add(new Term(word.toString(), maxWeight - cost - finalOutputs[state]));
+        }
+        for (int arc = arcStarts[state]; arc < arcStarts[state + 1]; arc++) {
+            word.append((char) (arcLabels[arc] + 97));
+            suggestHelper(arcTargets[arc], cost + arcOutputs[arc], word, container);
+            word.setLength(word.length() - 1);
+        }
+    }
+
+    /**
+     * Best-first search ranked by the cost of every path, which is exactly
+     * the cost of the best word below it, see Autocomplete.getTopSuggestions()
+     *
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects starting with prefix, sorted by
+     *         descending weight
+     */
+    @Override
+    public List<ITerm> getTopSuggestions(String prefix, int k) {
+        List<ITerm> container = new ArrayList<ITerm>();
+        long[] cost = new long[1];
+        int start = locate(prefix, cost);
+
+        if (start < 0 || k <= 0 || counts[start] == 0) {
+            return container;
+        }
+
+        PriorityQueue<Candidate> frontier = new PriorityQueue<Candidate>();
+        //max-heap of the k best word costs pushed so far
+        PriorityQueue<Long> best = new PriorityQueue<Long>(Math.min(k, counts[start]),
+                Collections.reverseOrder());
+        frontier.add(new Candidate(start, null, null, cost[0]));
+
+        while (!frontier.isEmpty() && container.size() < k) {
+            Candidate next = frontier.poll();
+
+            if (next.term != null) {
+                container.add(next.term);
+                continue;
+            }
+
+            int state = next.state;
+            if (finalCounts[state] > 0) {
+                long wordCost = next.cost + finalOutputs[state];
+                Term term = new Term(LetterPath.spell(prefix, next.path), maxWeight - wordCost);
+                frontier.add(new Candidate(-1, next.path, term, wordCost));
+                best.add(wordCost);
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+
+            long ceiling = best.size() == k ? best.peek() : Long.MAX_VALUE;
+            for (int arc = arcStarts[state]; arc < arcStarts[state + 1]; arc++) {
+                long arcCost = next.cost + arcOutputs[arc];
+                if (arcCost <= ceiling) {
+                    frontier.add(new Candidate(arcTargets[arc],
+                            new LetterPath(next.path, arcLabels[arc]), null, arcCost));
+                }
+            }
+        }
+        return container;
+    }
+
+    /**
+     * @return the number of states of the transducer
+     */
+    public int countStates() {
+        return counts.length;
+    }
+
+    /**
+     * @return the number of arcs of the transducer
+     */
+    public int countArcs() {
+        return arcLabels.length;
+    }
+
+    /**
+     * @return an estimate in bytes of the heap used by the arrays of the
+     *         transducer
+     */
+    public long estimateHeapBytes() {
+        int states = counts.length;
+        int arcs = arcLabels.length;
+        return HeapEstimate.array(states + 1, 4) + 2 * HeapEstimate.array(states, 4)
+                + HeapEstimate.array(states, 8) + HeapEstimate.array(arcs, 1)
+                + HeapEstimate.array(arcs, 8) + HeapEstimate.array(arcs, 4);
+    }
+
+    /*
+     * This follows prefix from the start state
+     *
+     * @param prefix
+     * @param cost receives the sum of the outputs on the path
+     * @return the state at the end of prefix, or -1
+     */
+    private int locate(String prefix, long[] cost) {
+        if (prefix == null) {
+            return -1;
+        }
+
+        int state = root;
+        long sum = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            int tmp = prefix.charAt(i);
+            if (tmp < 97 || tmp > 122) {
+                return -1;
+            }
+            int arc = arc(state, tmp - 97);
+            if (arc < 0) {
+                return -1;
+            }
+            sum += arcOutputs[arc];
+            state = arcTargets[arc];
+        }
+        cost[0] = sum;
+        return state;
+    }
+
+    /*
+     * @return the arc of state with the given label, or -1
+     */
+    private int arc(int state, int label) {
+        for (int arc = arcStarts[state]; arc < arcStarts[state + 1]; arc++) {
+            if (arcLabels[arc] == label) {
+                return arc;
+            }
+            if (arcLabels[arc] > label) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * An entry of the getTopSuggestions() frontier: a state reached by a path,
+     * ranked by the cost of the path, or a single word, ranked by its own
+     * cost. Ties are broken as in Autocomplete.Candidate.
+     */
+    private static class Candidate implements Comparable<Candidate> {
+
+        private final int state;
+        //the letters from the state of the prefix down to state
+        private final LetterPath path;
+        private final Term term;
+        private final long cost;
+
+        Candidate(int state, LetterPath path, Term term, long cost) {
+            this.state = state;
+            this.path = path;
+            this.term = term;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(Candidate that) {
+            if (this.cost != that.cost) {
+                return this.cost < that.cost ? -1 : 1;
+            }
+            int order = LetterPath.compare(this.path, that.path);
+            if (order != 0) {
+                return order;
+            }
+            return (this.term == null ? 0 : 1) - (that.term == null ? 0 : 1);
+        }
+    }
+}
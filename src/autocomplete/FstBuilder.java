@@ -0,0 +1,371 @@
+package autocomplete;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Builds a minimal weighted finite-state transducer from words given in
+ * lexicographic order, the dictionary of FstAutocomplete.
+ *
+ * ==== Outputs ====
+ * The weight of a word is turned into a cost, maxWeight - weight, and the
+ * cost of a word is the sum of the outputs of its arcs plus the final output
+ * of its last state. Outputs are pushed towards the start: an arc carries
+ * the smallest cost of any word through it, less what the arcs before it
+ * already carry. The cost of a path is then exactly the cost of the best
+ * word below it, which is what the top-k search of FstAutocomplete prunes
+ * with, and most arcs away from the start carry 0.
+ *
+ * ==== Minimization ====
+ * The builder keeps the states of the previous word on a stack. A new word
+ * freezes the states below its longest common prefix with the previous
+ * word, since nothing can be added to them any more. A frozen state is
+ * looked up in a register by its final output, its number of words and its
+ * arcs; an equal state already compiled is reused instead, so words ending
+ * in the same suffix with the same costs share their states ("-ing",
+ * "-tion"). The result is the minimal transducer, built in one pass with
+ * only the states of one word not compiled.
+ *
+ * A word given twice is counted twice, and keeps the later weight, as in
+ * Autocomplete.addWord().
+ *
+ * @author Daniel Xu
+ */
+public final class FstBuilder {
+
+    private final long maxWeight;
+    private final HashMap<Signature, Integer> register;
+
+    //states of the previous word not compiled yet, frontier[d] is the state
+    //after its first d letters
+    private State[] frontier;
+    private String previous;
+    //the previous word is only added once its count and weight are known
+    private String pending;
+    private long pendingWeight;
+    private int pendingCount;
+
+    //compiled states, the arcs of state s are [arcStarts[s], arcStarts[s + 1])
+    private int states;
+    private int[] arcStarts;
+    private int[] counts;
+    private long[] finalOutputs;
+    private int[] finalCounts;
+    private int arcs;
+    private byte[] arcLabels;
+    private long[] arcOutputs;
+    private int[] arcTargets;
+    private int root;
+
+
+    /*
+     * @param maxWeight the largest weight of the words that will be added
+     */
+    public FstBuilder(long maxWeight) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight must not be negative: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.register = new HashMap<Signature, Integer>();
+        this.frontier = new State[16];
+        for (int i = 0; i < frontier.length; i++) {
+            frontier[i] = new State();
+        }
+        this.previous = "";
+        this.arcStarts = new int[65];
+        this.counts = new int[64];
+        this.finalOutputs = new long[64];
+        this.finalCounts = new int[64];
+        this.arcLabels = new byte[64];
+        this.arcOutputs = new long[64];
+        this.arcTargets = new int[64];
+        this.root = -1;
+    }
+
+    /**
+     * Adds a word that is not smaller than the previous one. Words
+     * Autocomplete.addWord() would reject are skipped.
+     *
+     * @param word the word to be added
+     * @param weight the weight of the word, at most maxWeight
+     * @throws IllegalArgumentException if word is smaller than the previous
+     *         word or weight is out of range
+     * @throws IllegalStateException if finish() was called
+     */
+    public void add(String word, long weight) {
+        if (root >= 0) {
+            throw new IllegalStateException("the transducer is already built");
+        }
+        if (!Autocomplete.isWord(word)) {
+            return;
+        }
+        if (weight < 0 || weight > maxWeight) {
+            throw new IllegalArgumentException("weight out of range: " + weight);
+        }
+
+        if (word.equals(pending)) {
+            pendingWeight = weight;
+            pendingCount++;
+            return;
+        }
+        if (pending != null && word.compareTo(pending) < 0) {
+            throw new IllegalArgumentException("input is not sorted: \""
+                    + word + "\" comes after \"" + pending + "\"");
+        }
+        flush();
+        pending = word;
+        pendingWeight = weight;
+        pendingCount = 1;
+    }
+
+    /**
+     * Compiles the last states and returns the transducer. The builder
+     * cannot be used afterwards.
+     *
+     * @param k the maximum number of suggestions that should be displayed
+     * @return the transducer holding every word added
+     */
+    public FstAutocomplete finish(int k) {
+        compileRoot();
+        return new FstAutocomplete(this, k);
+    }
+
+    /*
+     * Compiles every state left on the stack, the root last
+     */
+    void compileRoot() {
+        if (root >= 0) {
+            return;
+        }
+        flush();
+        freezeTail(0);
+        root = compile(frontier[0]);
+        arcStarts[states] = arcs;
+    }
+
+    /*
+     * Adds the pending word to the transducer
+     */
+    private void flush() {
+        if (pending == null) {
+            return;
+        }
+        String word = pending;
+        pending = null;
+
+        int common = 0;
+        int max = Math.min(word.length(), previous.length());
+        while (common < max && word.charAt(common) == previous.charAt(common)) {
+            common++;
+        }
+        freezeTail(common);
+
+        if (word.length() >= frontier.length) {
+            int length = frontier.length;
+            frontier = Arrays.copyOf(frontier, Math.max(length * 2, word.length() + 1));
+            for (int i = length; i < frontier.length; i++) {
+                frontier[i] = new State();
+            }
+        }
+        for (int depth = common + 1; depth <= word.length(); depth++) {
+            frontier[depth - 1].addArc(word.charAt(depth - 1) - 97);
+        }
+        State last = frontier[word.length()];
+        last.finalCount = pendingCount;
+        last.finalOutput = 0;
+
+        //push the shared part of the cost onto the common prefix, and the
+        //rest of the cost the prefix carried down to the next state
+        long output = maxWeight - pendingWeight;
+        for (int depth = 1; depth <= common; depth++) {
+            State state = frontier[depth - 1];
+            long lastOutput = state.outputs[state.arcs - 1];
+            long shared = Math.min(output, lastOutput);
+            state.outputs[state.arcs - 1] = shared;
+            frontier[depth].prependOutput(lastOutput - shared);
+            output -= shared;
+        }
+        State branch = frontier[common];
+        branch.outputs[branch.arcs - 1] = output;
+
+        previous = word;
+    }
+
+    /*
+     * Compiles the states of the previous word deeper than depth
+     */
+    private void freezeTail(int depth) {
+        for (int d = previous.length(); d > depth; d--) {
+            int id = compile(frontier[d]);
+            State parent = frontier[d - 1];
+            parent.targets[parent.arcs - 1] = id;
+            frontier[d].clear();
+        }
+    }
+
+    /*
+     * @return the id of the compiled state equal to state, compiled now if
+     *         the register has none
+     */
+    private int compile(State state) {
+        Signature signature = new Signature(state);
+        Integer known = register.get(signature);
+        if (known != null) {
+            return known;
+        }
+
+        ensureStates(states + 1);
+        ensureArcs(arcs + state.arcs);
+        int id = states++;
+        arcStarts[id] = arcs;
+        finalOutputs[id] = state.finalOutput;
+        finalCounts[id] = state.finalCount;
+        int count = state.finalCount;
+        for (int i = 0; i < state.arcs; i++) {
+            arcLabels[arcs] = (byte) state.labels[i];
+            arcOutputs[arcs] = state.outputs[i];
+            arcTargets[arcs] = state.targets[i];
+            count += counts[state.targets[i]];
+            arcs++;
+        }
+        counts[id] = count;
+        register.put(signature, id);
+        return id;
+    }
+
+    private void ensureStates(int size) {
+        if (size > counts.length) {
+            int length = Math.max(counts.length * 2, size);
+            arcStarts = Arrays.copyOf(arcStarts, length + 1);
+            counts = Arrays.copyOf(counts, length);
+            finalOutputs = Arrays.copyOf(finalOutputs, length);
+            finalCounts = Arrays.copyOf(finalCounts, length);
+        }
+    }
+
+    private void ensureArcs(int size) {
+        if (size > arcLabels.length) {
+            int length = Math.max(arcLabels.length * 2, size);
+            arcLabels = Arrays.copyOf(arcLabels, length);
+            arcOutputs = Arrays.copyOf(arcOutputs, length);
+            arcTargets = Arrays.copyOf(arcTargets, length);
+        }
+    }
+
+    long maxWeight() {
+        return maxWeight;
+    }
+
+    int root() {
+        return root;
+    }
+
+    /*
+     * The compiled arrays, trimmed to their size, read by FstAutocomplete
+     */
+    int[] arcStarts() {
+        return Arrays.copyOf(arcStarts, states + 1);
+    }
+
+    int[] counts() {
+        return Arrays.copyOf(counts, states);
+    }
+
+    long[] finalOutputs() {
+        return Arrays.copyOf(finalOutputs, states);
+    }
+
+    int[] finalCounts() {
+        return Arrays.copyOf(finalCounts, states);
+    }
+
+    byte[] arcLabels() {
+        return Arrays.copyOf(arcLabels, arcs);
+    }
+
+    long[] arcOutputs() {
+        return Arrays.copyOf(arcOutputs, arcs);
+    }
+
+    int[] arcTargets() {
+        return Arrays.copyOf(arcTargets, arcs);
+    }
+
+    /*
+     * A state of the previous word that is not compiled yet. Its last arc
+     * leads to the next state on the stack until that state is compiled.
+     */
+    private static final class State {
+
+        private int arcs;
+        private int[] labels = new int[4];
+        private long[] outputs = new long[4];
+        private int[] targets = new int[4];
+        private long finalOutput;
+        //number of times the word ending here was added, 0 if not final
+        private int finalCount;
+
+        void addArc(int label) {
+            if (arcs == labels.length) {
+                labels = Arrays.copyOf(labels, arcs * 2);
+                outputs = Arrays.copyOf(outputs, arcs * 2);
+                targets = Arrays.copyOf(targets, arcs * 2);
+            }
+            labels[arcs] = label;
+            outputs[arcs] = 0;
+            targets[arcs] = -1;
+            arcs++;
+        }
+
+        /*
+         * Adds output to every path leaving this state
+         */
+        void prependOutput(long output) {
+            if (output == 0) {
+                return;
+            }
+            for (int i = 0; i < arcs; i++) {
+                outputs[i] += output;
+            }
+            if (finalCount > 0) {
+                finalOutput += output;
+            }
+        }
+
+        void clear() {
+            arcs = 0;
+            finalOutput = 0;
+            finalCount = 0;
+        }
+    }
+
+    /*
+     * The register key of a state: what makes two states interchangeable
+     */
+    private static final class Signature {
+
+        private final long[] fields;
+        private final int hash;
+
+        Signature(State state) {
+            fields = new long[2 + 3 * state.arcs];
+            fields[0] = state.finalOutput;
+            fields[1] = state.finalCount;
+            for (int i = 0; i < state.arcs; i++) {
+                fields[2 + 3 * i] = state.labels[i];
+                fields[3 + 3 * i] = state.outputs[i];
+                fields[4 + 3 * i] = state.targets[i];
+            }
+            hash = Arrays.hashCode(fields);
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            return that instanceof Signature && Arrays.equals(fields, ((Signature) that).fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
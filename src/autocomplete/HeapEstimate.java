@@ -0,0 +1,60 @@
+package autocomplete;
+
+/**
+ * Rough shallow sizes of the objects the tries are made of, assuming a 64-bit
+ * JVM with compressed oops (12 byte object header, 16 byte array header,
+ * 4 byte references, 8 byte alignment) and Latin-1 compact Strings.
+ *
+ * These are only used to compare trie layouts with each other, not to
+ * predict the exact heap of a process.
+ *
+ * @author Daniel Xu
+ */
+final class HeapEstimate {
+
+    static final int REFERENCE = 4;
+
+    private HeapEstimate() {
+    }
+
+    /*
+     * @param fieldBytes the total size of the fields of the object
+     * @return the size of an object with those fields
+     */
+    static long object(int fieldBytes) {
+        return align(12 + fieldBytes);
+    }
+
+    /*
+     * @param length the number of elements in the array
+     * @param elementBytes the size of one element
+     * @return the size of the array
+     */
+    static long array(int length, int elementBytes) {
+        return align(16 + (long) length * elementBytes);
+    }
+
+    /*
+     * @param word the String
+     * @return the size of the String and its byte[]
+     */
+    static long string(String word) {
+        //hash, coder, hashIsZero and the value reference
+        return object(4 + 1 + 1 + REFERENCE) + array(word.length(), 1);
+    }
+
+    /*
+     * @param term the Term, may be null
+     * @return the size of the Term and its String, 0 for null
+     */
+    static long term(Term term) {
+        if (term == null) {
+            return 0;
+        }
+        return object(REFERENCE + 8) + string(term.getTerm());
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,154 @@
+package autocomplete;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values in the manner of HdrHistogram, used by
+ * InstrumentedAutocomplete for latencies, nodes visited and result sizes.
+ *
+ * Values below 32 have a bucket each. Above, every power of two is split
+ * into 32 buckets of equal width, so a value is known to within 1/32 (about
+ * 3%) of itself whatever its magnitude, from nanoseconds to minutes, in a
+ * fixed array of 1888 counters. record() is one atomic increment, and a
+ * read of the max that is only written when a new max is recorded; the
+ * mean is computed from the buckets, to the same precision. It is safe
+ * from any number of threads, percentiles read while values are recorded
+ * may miss the latest ones.
+ *
+ * @author Daniel Xu
+ */
+public final class Histogram {
+
+    //buckets per power of two, and the values below that have one each
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong max;
+
+
+    /*
+     * This makes an empty histogram
+     */
+    public Histogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records one value, a negative value is recorded as 0
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return the mean of the values recorded, each taken as the middle of
+     *         its bucket, 0 if there are none
+     */
+    public double mean() {
+        long count = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = counts.get(i);
+            if (n > 0) {
+                count += n;
+                sum += n * ((lowest(i) + highest(i)) / 2.0);
+            }
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @return the largest value recorded, 0 if there are none
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile the fraction of the values, 0.99 for the 99th percentile
+     * @return the value that quantile of the values are at most, to within
+     *         the width of its bucket, 0 if there are none
+     */
+    public long percentile(double quantile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets every value recorded
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    /*
+     * @return the bucket of value
+     */
+    static int bucket(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+        return (exponent - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /*
+     * @return the smallest value of bucket
+     */
+    static long lowest(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int exponent = bucket / SUB + SUB_BITS - 1;
+        return (long) (SUB + bucket % SUB) << (exponent - SUB_BITS);
+    }
+
+    /*
+     * @return the largest value of bucket
+     */
+    static long highest(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int exponent = bucket / SUB + SUB_BITS - 1;
+        return lowest(bucket) + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
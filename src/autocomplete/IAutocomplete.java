@@ -60,4 +60,16 @@ public interface IAutocomplete
      */
     public List<ITerm> getSuggestions(String prefix);
 
+
+    /**
+     * This method should not throw an exception
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return a List containing the k ITerm objects with the largest weight
+     *         and query starting with prefix, sorted by descending weight.
+     *         Return an empty list if there are no ITerm object starting
+     *         with prefix.
+     */
+    public List<ITerm> getTopSuggestions(String prefix, int k);
+
 }
@@ -0,0 +1,304 @@
+package autocomplete;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Mid-word completion: finds the words that contain a typed fragment
+ * anywhere, so "flation" suggests "inflation", which a prefix walk of the
+ * trie cannot do.
+ *
+ * ==== Layout ====
+ * - term ids: the words of the dictionary numbered by descending weight,
+ *   then in lexicographic order, their letters in one byte pool
+ * - postings: for every string of 1 to 3 letters (a "gram", 18278 of them),
+ *   the ids of the words containing it, in ascending order, delta-coded as
+ *   variable-length bytes in one shared array
+ * Because ids follow the weights, the first k ids of a posting list are the
+ * k heaviest words containing the gram. A fragment of up to 3 letters is a
+ * gram itself and reads k entries of one list, however long the list is.
+ * A longer fragment reads the shortest list among its 3-letter grams and
+ * checks each word until k of them contain the whole fragment; the first
+ * k that do are again the heaviest ones, so the lists are never read past
+ * the answer.
+ *
+ * Only the words of a - z are indexed; the others, such as the phrases of
+ * a PhraseAutocomplete with their spaces, are skipped. The index is a
+ * snapshot of the words of the source when it is built, words added to the
+ * source afterwards are not seen. It is never written
+ * after the constructor, so any number of threads can query it.
+ *
+ * @author Daniel Xu
+ */
+public final class InfixIndex {
+
+    private static final int MAX_GRAM = 3;
+    private static final int GRAMS = 26 + 26 * 26 + 26 * 26 * 26;
+
+    private final byte[] letters;
+    private final int[] offsets;
+    private final long[] weights;
+    private final int[] gramStarts;
+    private final int[] gramSizes;
+    private final byte[] postings;
+
+
+    /*
+     * Indexes every word of source made of a - z only
+     *
+     * @param source the dictionary, read with getSuggestions("")
+     */
+    public InfixIndex(IAutocomplete source) {
+        List<ITerm> terms = new ArrayList<ITerm>();
+        for (ITerm term : source.getSuggestions("")) {
+            if (Autocomplete.isWord(term.getTerm())) {
+                terms.add(term);
+            }
+        }
+        Collections.sort(terms, Autocomplete.BY_WEIGHT_THEN_TERM);
+
+        int size = terms.size();
+        int total = 0;
+        for (ITerm term : terms) {
+            total += term.getTerm().length();
+        }
+        this.letters = new byte[total];
+        this.offsets = new int[size + 1];
+        this.weights = new long[size];
+        for (int id = 0; id < size; id++) {
+            String word = terms.get(id).getTerm();
+            for (int i = 0; i < word.length(); i++) {
+                letters[offsets[id] + i] = (byte) (word.charAt(i) - 97);
+            }
+            offsets[id + 1] = offsets[id] + word.length();
+            weights[id] = terms.get(id).getWeight();
+        }
+
+        //first pass: the size of every list, second pass: the lists
+        this.gramStarts = new int[GRAMS + 1];
+        this.gramSizes = new int[GRAMS];
+        int[] last = new int[GRAMS];
+        int[] bytes = new int[GRAMS];
+        Arrays.fill(last, -1);
+        for (int id = 0; id < size; id++) {
+            for (int gram : grams(id)) {
+                if (last[gram] != id) {
+                    bytes[gram] += varintLength(id - last[gram]);
+                    gramSizes[gram]++;
+                    last[gram] = id;
+                }
+            }
+        }
+        for (int gram = 0; gram < GRAMS; gram++) {
+            gramStarts[gram + 1] = gramStarts[gram] + bytes[gram];
+        }
+
+        this.postings = new byte[gramStarts[GRAMS]];
+        int[] position = Arrays.copyOf(gramStarts, GRAMS);
+        Arrays.fill(last, -1);
+        for (int id = 0; id < size; id++) {
+            for (int gram : grams(id)) {
+                if (last[gram] != id) {
+                    position[gram] = writeVarint(id - last[gram], position[gram]);
+                    last[gram] = id;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method returns the k heaviest words that contain fragment,
+     * anywhere from the first letter to the last
+     *
+     * @param fragment the letters typed, a - z
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects containing fragment, sorted by
+     *         descending weight, then in lexicographic order. Return an empty
+     *         list if there are none.
+     */
+    public List<ITerm> getTopSuggestions(String fragment, int k) {
+        List<ITerm> container = new ArrayList<ITerm>();
+        if (fragment == null || k <= 0) {
+            return container;
+        }
+        for (int i = 0; i < fragment.length(); i++) {
+            int tmp = fragment.charAt(i);
+            if (tmp < 97 || tmp > 122) {
+                return container;
+            }
+        }
+
+        if (fragment.isEmpty()) {
+            for (int id = 0; id < weights.length && id < k; id++) {
+                container.add(term(id));
+            }
+            return container;
+        }
+
+        if (fragment.length() <= MAX_GRAM) {
+            //every word of the list contains the fragment
+            int gram = gram(fragment, 0, fragment.length());
+            int position = gramStarts[gram];
+            int id = -1;
+            for (int i = 0; i < gramSizes[gram] && i < k; i++) {
+                long next = readVarint(position);
+                id += (int) next;
+                position = (int) (next >>> 32);
+                container.add(term(id));
+            }
+            return container;
+        }
+
+        //the rarest 3-letter gram of the fragment drives the search
+        int driver = gram(fragment, 0, MAX_GRAM);
+        for (int i = 1; i + MAX_GRAM <= fragment.length(); i++) {
+            int gram = gram(fragment, i, MAX_GRAM);
+            if (gramSizes[gram] < gramSizes[driver]) {
+                driver = gram;
+            }
+        }
+        int position = gramStarts[driver];
+        int id = -1;
+        for (int i = 0; i < gramSizes[driver] && container.size() < k; i++) {
+            long next = readVarint(position);
+            id += (int) next;
+            position = (int) (next >>> 32);
+            if (contains(id, fragment)) {
+                container.add(term(id));
+            }
+        }
+        return container;
+    }
+
+    /**
+     * @return the number of words indexed
+     */
+    public int size() {
+        return weights.length;
+    }
+
+    /**
+     * @return an estimate in bytes of the heap used by the arrays of the index
+     */
+    public long estimateHeapBytes() {
+        return HeapEstimate.array(letters.length, 1) + HeapEstimate.array(offsets.length, 4)
+                + HeapEstimate.array(weights.length, 8) + HeapEstimate.array(gramStarts.length, 4)
+                + HeapEstimate.array(gramSizes.length, 4) + HeapEstimate.array(postings.length, 1);
+    }
+
+    /*
+     * @return a new Term for the word of id
+     */
+    private Term term(int id) {
+        byte[] word = new byte[offsets[id + 1] - offsets[id]];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = (byte) (letters[offsets[id] + i] + 97);
+        }
+        return new Term(new String(word, StandardCharsets.ISO_8859_1), weights[id]);
+    }
+
+    /*
+     * @return whether the word of id contains fragment
+     */
+    private boolean contains(int id, String fragment) {
+        int start = offsets[id];
+        int last = offsets[id + 1] - fragment.length();
+        for (int from = start; from <= last; from++) {
+            int i = 0;
+            while (i < fragment.length() && letters[from + i] == fragment.charAt(i) - 97) {
+                i++;
+            }
+            if (i == fragment.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * @return the grams of every length and position of the word of id, a
+     *         gram found twice is listed twice
+     */
+    private int[] grams(int id) {
+        int start = offsets[id];
+        int length = offsets[id + 1] - start;
+        int count = 0;
+        for (int n = 1; n <= MAX_GRAM && n <= length; n++) {
+            count += length - n + 1;
+        }
+
+        int[] grams = new int[count];
+        int g = 0;
+        for (int n = 1; n <= MAX_GRAM && n <= length; n++) {
+            for (int i = start; i + n <= start + length; i++) {
+                int code = 0;
+                for (int j = 0; j < n; j++) {
+                    code = code * 26 + letters[i + j];
+                }
+                grams[g++] = base(n) + code;
+            }
+        }
+        return grams;
+    }
+
+    /*
+     * @return the gram of the n letters of fragment at from
+     */
+    private static int gram(String fragment, int from, int n) {
+        int code = 0;
+        for (int j = 0; j < n; j++) {
+            code = code * 26 + fragment.charAt(from + j) - 97;
+        }
+        return base(n) + code;
+    }
+
+    /*
+     * @return the first gram of length n: 1 letter grams come first, then 2
+     *         letters, then 3
+     */
+    private static int base(int n) {
+        return n == 1 ? 0 : n == 2 ? 26 : 26 + 26 * 26;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while (value >= 0x80) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /*
+     * Writes value at position, 7 bits per byte, the high bit set on every
+     * byte but the last
+     *
+     * @return the position after the value
+     */
+    private int writeVarint(int value, int position) {
+        while (value >= 0x80) {
+            postings[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        postings[position++] = (byte) value;
+        return position;
+    }
+
+    /*
+     * @return the value at position in the low 32 bits, and the position
+     *         after it in the high 32 bits
+     */
+    private long readVarint(int position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = postings[position++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return ((long) position << 32) | value;
+    }
+}
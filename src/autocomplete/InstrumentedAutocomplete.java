@@ -0,0 +1,365 @@
+package autocomplete;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Query metrics for an Autocomplete, published over JMX.
+ *
+ * ==== Metrics ====
+ * For each of getSubTrie(), countPrefixes(), getSuggestions() and
+ * getTopSuggestions(): the number of calls, and Histograms of the latency
+ * (p50, p99, p99.9, max), of the nodes visited (the prefix walk plus the
+ * work below it, see QueryTrace) and of the number of results. The nodes
+ * are counted by the search of the Autocomplete itself, through a
+ * QueryTrace that is only made for the queries measured; the others run
+ * the plain search.
+ *
+ * ==== Overhead ====
+ * Measuring a query costs two clock reads, a QueryTrace and three atomic
+ * histogram updates, a few hundred nanoseconds on a virtual machine. That
+ * is under a percent of a top-k search on a large trie, but several times
+ * a countPrefixes() walk, which takes about 150 ns. So only one query in
+ * getSampleInterval(), picked at random, is measured; the others pay a
+ * random number and go straight to the trie, with no shared write. The
+ * number of calls is estimated the same way, each measured query counting
+ * for interval calls, and is exact with an interval of 1. With the
+ * default of 64 the overhead of a top-k search is lost in its noise and a
+ * countPrefixes() walk costs about 10 ns more, and the p99.9 is stable
+ * after a few hundred thousand queries.
+ *
+ * ==== Explain ====
+ * explain() runs one query with a QueryTrace and returns it, to see why a
+ * prefix is slow: how many nodes the search expanded and pruned, how large
+ * its frontier grew, whether a materialized list answered it. Explained
+ * queries are not recorded in the metrics.
+ *
+ * Queries are safe from any number of threads if the wrapped trie is not
+ * written meanwhile, as for Autocomplete itself.
+ *
+ * @author Daniel Xu
+ */
+public class InstrumentedAutocomplete implements IAutocomplete, AutocompleteMetricsMXBean {
+
+    /**
+     * One in how many queries is measured unless told otherwise
+     */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+    private final Autocomplete delegate;
+    private final Operation subTrie;
+    private final Operation count;
+    private final Operation suggestions;
+    private final Operation top;
+    private volatile int sampleInterval;
+    private ObjectName registered;
+
+
+    /*
+     * This measures one query of delegate in DEFAULT_SAMPLE_INTERVAL
+     *
+     * @param delegate the trie answering the queries
+     */
+    public InstrumentedAutocomplete(Autocomplete delegate) {
+        this(delegate, DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /*
+     * @param delegate the trie answering the queries
+     * @param sampleInterval one in how many queries to measure, 1 for all
+     *                       of them
+     */
+    public InstrumentedAutocomplete(Autocomplete delegate, int sampleInterval) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must not be null");
+        }
+        this.delegate = delegate;
+        this.subTrie = new Operation();
+        this.count = new Operation();
+        this.suggestions = new Operation();
+        this.top = new Operation();
+        setSampleInterval(sampleInterval);
+    }
+
+    /**
+     * @param word the word to be added to the Trie
+     * @param weight the weight of the word
+     */
+    @Override
+    public void addWord(String word, long weight) {
+        delegate.addWord(word, weight);
+    }
+
+    /**
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @return the root of the Trie
+     */
+    @Override
+    public Node buildTrie(String filename, int k) {
+        return delegate.buildTrie(filename, k);
+    }
+
+    /**
+     * @return k the the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return delegate.numberSuggestions();
+    }
+
+    /**
+     * @param prefix
+     * @return the root of the subTrie corresponding to the last character of
+     *         the prefix.
+     */
+    @Override
+    public Node getSubTrie(String prefix) {
+        int calls = sample();
+        if (calls == 0) {
+            return delegate.getSubTrie(prefix);
+        }
+        QueryTrace trace = new QueryTrace("getSubTrie", prefix);
+        long start = System.nanoTime();
+        Node node = delegate.locate(prefix, trace);
+        trace.nanos = System.nanoTime() - start;
+        trace.found = node != null;
+        trace.results = node == null ? 0 : 1;
+        subTrie.record(trace, calls);
+        return node;
+    }
+
+    /**
+     * @param prefix
+     * @return the number of words that start with prefix.
+     */
+    @Override
+    public int countPrefixes(String prefix) {
+        int calls = sample();
+        if (calls == 0) {
+            return delegate.countPrefixes(prefix);
+        }
+        QueryTrace trace = new QueryTrace("countPrefixes", prefix);
+        long start = System.nanoTime();
+        Node node = delegate.locate(prefix, trace);
+        int result = node == null ? 0 : node.getPrefixes();
+        trace.nanos = System.nanoTime() - start;
+        trace.found = node != null;
+        trace.results = result;
+        count.record(trace, calls);
+        return result;
+    }
+
+    /**
+     * @param prefix
+     * @return a List containing all the ITerm objects with query starting with
+     *         prefix, in lexicographic order
+     */
+    @Override
+    public List<ITerm> getSuggestions(String prefix) {
+        int calls = sample();
+        if (calls == 0) {
+            return delegate.getSuggestions(prefix);
+        }
+        QueryTrace trace = new QueryTrace("getSuggestions", prefix);
+        List<ITerm> result = suggestions(prefix, trace);
+        suggestions.record(trace, calls);
+        return result;
+    }
+
+    /**
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects starting with prefix, sorted by
+     *         descending weight
+     */
+    @Override
+    public List<ITerm> getTopSuggestions(String prefix, int k) {
+        int calls = sample();
+        if (calls == 0) {
+            return delegate.getTopSuggestions(prefix, k);
+        }
+        QueryTrace trace = new QueryTrace("getTopSuggestions", prefix);
+        List<ITerm> result = topSuggestions(prefix, k, trace);
+        top.record(trace, calls);
+        return result;
+    }
+
+    /**
+     * Runs getTopSuggestions(prefix, k), or getSuggestions(prefix) when k is
+     * not positive, and reports the work it did. The query is not recorded
+     * in the metrics.
+     *
+     * @param prefix
+     * @param k the maximum number of terms, 0 for every word of the prefix
+     * @return the trace of the query
+     */
+    public QueryTrace explain(String prefix, int k) {
+        if (k <= 0) {
+            QueryTrace trace = new QueryTrace("getSuggestions", prefix);
+            suggestions(prefix, trace);
+            return trace;
+        }
+        QueryTrace trace = new QueryTrace("getTopSuggestions", prefix);
+        topSuggestions(prefix, k, trace);
+        return trace;
+    }
+
+    private List<ITerm> suggestions(String prefix, QueryTrace trace) {
+        long start = System.nanoTime();
+        Node node = delegate.locate(prefix, trace);
+        List<ITerm> result = delegate.suggestionsAt(node, prefix, trace);
+        trace.nanos = System.nanoTime() - start;
+        trace.found = node != null;
+        trace.results = result.size();
+        return result;
+    }
+
+    private List<ITerm> topSuggestions(String prefix, int k, QueryTrace trace) {
+        long start = System.nanoTime();
+        Node node = delegate.locate(prefix, trace);
+        List<ITerm> result = delegate.topSuggestionsAt(node, prefix, k, trace);
+        trace.nanos = System.nanoTime() - start;
+        trace.found = node != null;
+        trace.results = result.size();
+        return result;
+    }
+
+    /*
+     * @return 0 if the current query is not measured, else the number of
+     *         calls it stands for
+     */
+    private int sample() {
+        int interval = sampleInterval;
+        return interval == 1 || ThreadLocalRandom.current().nextInt(interval) == 0 ? interval : 0;
+    }
+
+    @Override
+    public OperationStats getSubTrieStats() {
+        return subTrie.snapshot();
+    }
+
+    @Override
+    public OperationStats getCountPrefixesStats() {
+        return count.snapshot();
+    }
+
+    @Override
+    public OperationStats getSuggestionsStats() {
+        return suggestions.snapshot();
+    }
+
+    @Override
+    public OperationStats getTopSuggestionsStats() {
+        return top.snapshot();
+    }
+
+    @Override
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * @param interval one in how many queries to measure, 1 for all of them
+     * @throws IllegalArgumentException if interval is not positive
+     */
+    @Override
+    public void setSampleInterval(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+        }
+        this.sampleInterval = interval;
+    }
+
+    @Override
+    public void reset() {
+        subTrie.reset();
+        count.reset();
+        suggestions.reset();
+        top.reset();
+    }
+
+    @Override
+    public String explainQuery(String prefix, int k) {
+        return explain(prefix, k).toString();
+    }
+
+    /**
+     * Registers the metrics with the platform MBeanServer, under
+     * "autocomplete:type=InstrumentedAutocomplete,name=" + name
+     *
+     * @param name the name telling this trie from the others of the process
+     * @return the name registered
+     * @throws IllegalArgumentException if name is not valid in an ObjectName
+     * @throws IllegalStateException if the name is already registered
+     */
+    public synchronized ObjectName register(String name) {
+        ObjectName objectName;
+        try {
+            objectName = new ObjectName("autocomplete:type=InstrumentedAutocomplete,name="
+                    + ObjectName.quote(name));
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("invalid name: " + name, e);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register " + objectName, e);
+        }
+        registered = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes the metrics from the platform MBeanServer, if register() was
+     * called
+     */
+    public synchronized void unregister() {
+        if (registered == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(registered)) {
+                server.unregisterMBean(registered);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot unregister " + registered, e);
+        }
+        registered = null;
+    }
+
+    /*
+     * The metrics of one kind of query
+     */
+    private static final class Operation {
+
+        private final LongAdder calls = new LongAdder();
+        private final Histogram latency = new Histogram();
+        private final Histogram nodes = new Histogram();
+        private final Histogram results = new Histogram();
+
+        void record(QueryTrace trace, int calls) {
+            this.calls.add(calls);
+            latency.record(trace.nanos);
+            nodes.record(trace.prefixNodes + trace.nodesVisited);
+            results.record(trace.results);
+        }
+
+        OperationStats snapshot() {
+            return new OperationStats(calls.sum(), latency, nodes, results);
+        }
+
+        void reset() {
+            calls.reset();
+            latency.reset();
+            nodes.reset();
+            results.reset();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package autocomplete;
+
+/**
+ * The letters from the node of a prefix down to one of its descendants, as
+ * a chain of links to the parent, used by the searches of Autocomplete.
+ *
+ * Nodes do not store their word, so a search that reaches a word has to
+ * spell it from the path it took. Every entry of a search frontier keeps the
+ * link of its node, which costs one small object per expanded node, and the
+ * String of a word is only made once the word is reached.
+ *
+ * @author Daniel Xu
+ */
+final class LetterPath {
+
+    private final LetterPath parent;
+    private final char letter;
+    private final int depth;
+
+
+    /*
+     * @param parent the path to the parent, null for a child of the node of
+     *               the prefix
+     * @param letter the letter of the last node, see Node.symbol()
+     */
+    LetterPath(LetterPath parent, int letter) {
+        this.parent = parent;
+        this.letter = Node.symbol(letter);
+        this.depth = parent == null ? 1 : parent.depth + 1;
+    }
+
+    /*
+     * @param prefix the prefix the path starts at
+     * @param path the path below prefix, null for prefix itself
+     * @return the word spelled by prefix followed by the letters of path
+     */
+    static String spell(CharSequence prefix, LetterPath path) {
+        if (path == null) {
+            return prefix.toString();
+        }
+        int length = prefix.length() + path.depth;
+        char[] word = new char[length];
+        for (int i = 0; i < prefix.length(); i++) {
+            word[i] = prefix.charAt(i);
+        }
+        for (LetterPath link = path; link != null; link = link.parent) {
+            word[--length] = link.letter;
+        }
+        return new String(word);
+    }
+
+    /*
+     * Orders two paths of the same search like the words they spell, a
+     * path before the paths that extend it. The paths of one search share
+     * the links of their common part, so only the letters below it are
+     * read.
+     *
+     * @param a a path, null for the node the search starts at
+     * @param b a path, null for the node the search starts at
+     * @return a negative number, zero or a positive number as a comes
+     *         before, at or after b
+     */
+    static int compare(LetterPath a, LetterPath b) {
+        LetterPath x = a;
+        LetterPath y = b;
+        while (depth(x) > depth(y)) {
+            x = x.parent;
+        }
+        while (depth(y) > depth(x)) {
+            y = y.parent;
+        }
+        if (x == y) {
+            //one path extends the other
+            return depth(a) - depth(b);
+        }
+        while (x.parent != y.parent) {
+            x = x.parent;
+            y = y.parent;
+        }
+        return x.letter - y.letter;
+    }
+
+    private static int depth(LetterPath path) {
+        return path == null ? 0 : path.depth;
+    }
+}
@@ -0,0 +1,173 @@
+package autocomplete;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+    /*
+     * @Author Daniel Xu
+     */
+
+/**
+ * A read-only trie answering queries straight from a memory-mapped snapshot
+ * written by FrozenAutocomplete.writeSnapshot() (or
+ * Autocomplete.writeSnapshot()). Nothing is deserialized: opening a snapshot
+ * maps the file and checks its header, and the operating system pages the
+ * nodes in as queries touch them.
+ *
+ * Every read is an absolute get on a buffer view, so any number of threads
+ * can query the same instance without locking.
+ */
+public final class MappedAutocomplete extends ArrayTrie {
+
+    private final int size;
+    private final int numSuggest;
+    private final ByteBuffer labels;
+    private final IntBuffer ends;
+    private final IntBuffer parents;
+    private final IntBuffer prefixes;
+    private final LongBuffer weights;
+    private final LongBuffer maxWeights;
+
+    /*
+     * @param body the mapped body of the snapshot
+     * @param size the number of nodes
+     * @param numSuggest the number of suggestions given to buildTrie()
+     */
+    private MappedAutocomplete(ByteBuffer body, int size, int numSuggest) {
+        long[] offsets = TrieSnapshot.sections(size);
+        this.size = size;
+        this.numSuggest = numSuggest;
+        this.labels = section(body, offsets[0], size);
+        this.ends = section(body, offsets[1], 4 * size).asIntBuffer();
+        this.parents = section(body, offsets[2], 4 * size).asIntBuffer();
+        this.prefixes = section(body, offsets[3], 4 * size).asIntBuffer();
+        this.weights = section(body, offsets[4], 8 * size).asLongBuffer();
+        this.maxWeights = section(body, offsets[5], 8 * size).asLongBuffer();
+    }
+
+    /**
+     * Maps a snapshot and checks its header and checksum
+     *
+     * @param file the snapshot file
+     * @return the trie stored in the snapshot
+     * @throws IOException if the file cannot be read, was written by another
+     *         version of the format, or is truncated or corrupt
+     */
+    public static MappedAutocomplete open(Path file) throws IOException {
+        return open(file, true);
+    }
+
+    /**
+     * Maps a snapshot and checks its header. Checking the checksum reads the
+     * whole file once, which can be skipped for a file that was already
+     * verified.
+     *
+     * @param file the snapshot file
+     * @param verifyChecksum whether to compare the body with its CRC32
+     * @return the trie stored in the snapshot
+     * @throws IOException if the file cannot be read, was written by another
+     *         version of the format, or is truncated or corrupt
+     */
+    public static MappedAutocomplete open(Path file, boolean verifyChecksum) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < TrieSnapshot.HEADER_BYTES) {
+                throw new IOException(file + " is too short to be a snapshot");
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be mapped");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (mapped.getInt(0) != TrieSnapshot.MAGIC) {
+            throw new IOException(file + " is not a trie snapshot");
+        }
+        int version = mapped.getInt(4);
+        if (version != TrieSnapshot.VERSION) {
+            throw new IOException(file + " has snapshot version " + version
+                    + ", expected " + TrieSnapshot.VERSION);
+        }
+
+        int size = mapped.getInt(8);
+        int numSuggest = mapped.getInt(12);
+        long bodyLength = mapped.getLong(16);
+        if (size <= 0 || bodyLength != TrieSnapshot.sections(size)[6]
+                || TrieSnapshot.HEADER_BYTES + bodyLength != mapped.capacity()) {
+            throw new IOException(file + " is truncated");
+        }
+
+        ByteBuffer body = section(mapped, TrieSnapshot.HEADER_BYTES, (int) bodyLength);
+        if (verifyChecksum) {
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (crc.getValue() != mapped.getLong(24)) {
+                throw new IOException(file + " failed its checksum");
+            }
+        }
+        return new MappedAutocomplete(body, size, numSuggest);
+    }
+
+    /*
+     * @return a little-endian view of length bytes of buffer starting at offset
+     */
+    private static ByteBuffer section(ByteBuffer buffer, long offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) offset);
+        view.limit((int) offset + length);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return k the the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return this.numSuggest;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    byte label(int node) {
+        return labels.get(node);
+    }
+
+    @Override
+    int end(int node) {
+        return ends.get(node);
+    }
+
+    @Override
+    int parent(int node) {
+        return parents.get(node);
+    }
+
+    @Override
+    int prefixes(int node) {
+        return prefixes.get(node);
+    }
+
+    @Override
+    long weight(int node) {
+        return weights.get(node);
+    }
+
+    @Override
+    long maxWeight(int node) {
+        return maxWeights.get(node);
+    }
+
+}
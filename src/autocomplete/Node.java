@@ -3,9 +3,30 @@ package autocomplete;
 /**
  * ==== Attributes ====
  * - words: number of words
- * - term: the ITerm object
+ * - weight: the weight of the word ending at this node, -1 if no word ends
+ *   here. The word itself is not stored, it is the path from the root, and
+ *   ITerm objects are only made for the words a query returns
  * - prefixes: number of prefixes 
- * - references: Array of references to next/children Nodes
+ * - children: the child Nodes, stored in one of four layouts picked by how
+ *   many children there are (see below)
+ * - maxWeight: the largest weight of any word in this node's subtree
+ * - topTerms: the heaviest words of this node's subtree, heaviest first, when
+ *   the trie has been materialized (null otherwise)
+ * 
+ * ==== Child layouts ====
+ * Most nodes have no child or only a few, so a Node[26] per node is mostly
+ * empty. Children are kept in the smallest of these layouts, and a node is
+ * promoted or demoted automatically as children are set or removed:
+ * - EMPTY: no child
+ * - SINGLE: one child stored directly, keys holds its letter
+ * - SMALL: up to 4 children in a dense array, keys holds their letters in
+ *   order, 5 bits each
+ * - BITMAP: up to 16 children in a dense array, keys has one bit per letter
+ *   and a child's index is the number of bits set below its letter
+ * - FULL: a Node[27] indexed by letter, keys has one bit per letter
+ * Letters are 0 for a to 25 for z, and SPACE (26) for the space between
+ * the words of a phrase, which only PhraseAutocomplete stores. Enumerating
+ * children with nextLetter() only visits the letters that have a child.
  * 
  * ==== Constructor ====
  * Node(String word, long weight)
@@ -14,34 +35,55 @@ package autocomplete;
  */
 
 public class Node {
+
+    private static final byte EMPTY = 0;
+    private static final byte SINGLE = 1;
+    private static final byte SMALL = 2;
+    private static final byte BITMAP = 3;
+    private static final byte FULL = 4;
+
+    private static final int SMALL_MAX = 4;
+
+    //the letter of ' ', after z
+    static final int SPACE = 26;
+    private static final int BITMAP_MAX = 16;
     
-    private Term thisTerm;
-    //private String word;
-    private Node[] childRefs;
+    private long weight;
+    //a Node for SINGLE, a Node[] for the other layouts
+    private Object children;
+    private int keys;
+    private byte kind;
+    private byte size;
     private int words;
     private int prefixes;
+    private long maxWeight;
+    private Term[] topTerms;
 
    
     /*
-     * This is a node constructor when Term is null
+     * This is a node constructor when no word ends here
      */
     public Node() {
-        thisTerm = null;
+        this.weight = -1;
         this.prefixes = 0; 
         this.words = 0; 
-        this.childRefs = new Node[26];
+        this.kind = EMPTY;
     }
      
     
     /*
-     * This is a node constructor when there should be a term 
+     * This is a node constructor when there should be a term. Only the weight
+     * is kept, the word is spelled by the path to this node.
      */
     public Node(String word, long weight) {
-        
-        thisTerm = new Term(word, weight);
+        if (word == null || weight < 0) {
+            throw new IllegalArgumentException("invalid term: " + word + " " + weight);
+        }
+        this.weight = weight;
         this.prefixes = 0; //This term is a prefix of how many words
         this.words = 0; //
-        this.childRefs = new Node[26];
+        this.maxWeight = weight;
+        this.kind = EMPTY;
     }
 
 
@@ -74,33 +116,276 @@ public class Node {
     }
 
     /*
-     * @return this returns the Term stored in this Node object
+     * @return the largest weight of any word stored at or below this node
      */
-    protected Term getTerm() {
-        return thisTerm;
+    protected long getMaxWeight() {
+        return maxWeight;
     }
-    
+
     /*
-     *@param sets the term stored in this node 
+     * @param sets the largest weight of any word stored at or below this node
      */
-    protected void setTerm(Term wordRef) {
-        this.thisTerm = wordRef;
+    protected void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
     }
-    
+
     /*
-     * @return this returns the node array stored in this Node object 
+     * @return the precomputed heaviest words of this subtree, or null if this
+     *         node was not materialized
      */
-    protected Node[] getReference() {
-        return this.childRefs;
+    protected Term[] getTopTerms() {
+        return topTerms;
     }
-    
+
+    /*
+     * @param sets the precomputed heaviest words of this subtree
+     */
+    protected void setTopTerms(Term[] topTerms) {
+        this.topTerms = topTerms;
+    }
+
+    /*
+     * @return the weight of the word ending at this node, or -1 if there is
+     *         none
+     */
+    protected long getWeight() {
+        return weight;
+    }
+
     /*
-     * This sets the node array stored in this Node object
+     * @param sets the weight of the word ending at this node, -1 for none
      */
-    protected void setReference(Node[] array) {
-        this.childRefs = array;
+    protected void setWeight(long weight) {
+        this.weight = weight;
+    }
+
+    /*
+     * @return whether a word ends at this node
+     */
+    protected boolean isWord() {
+        return weight >= 0;
     }
     
+    /*
+     * @param letter a letter, 0 for a to 25 for z, or SPACE
+     * @return the character of letter
+     */
+    static char symbol(int letter) {
+        return letter == SPACE ? ' ' : (char) (letter + 97);
+    }
+
+    /*
+     * @return the number of children of this node
+     */
+    protected int childCount() {
+        return size;
+    }
+
+    /*
+     * @param letter the letter of the child, 0 for a to 25 for z, or SPACE
+     * @return the child for letter, or null if there is none
+     */
+    protected Node getChild(int letter) {
+        switch (kind) {
+            case SINGLE:
+                return keys == letter ? (Node) children : null;
+            case SMALL:
+                for (int i = 0; i < size; i++) {
+                    int key = (keys >>> (5 * i)) & 31;
+                    if (key == letter) {
+                        return ((Node[]) children)[i];
+                    }
+                    if (key > letter) {
+                        return null;
+                    }
+                }
+                return null;
+            case BITMAP:
+                int bit = 1 << letter;
+                if ((keys & bit) == 0) {
+                    return null;
+                }
+                return ((Node[]) children)[Integer.bitCount(keys & (bit - 1))];
+            case FULL:
+                return ((Node[]) children)[letter];
+            default:
+                return null;
+        }
+    }
+
+    /*
+     * @param from the first letter to look at
+     * @return the smallest letter at or after from that has a child, or -1.
+     *         Children are visited with
+     *         for (int c = node.nextLetter(0); c >= 0; c = node.nextLetter(c + 1))
+     */
+    protected int nextLetter(int from) {
+        switch (kind) {
+            case SINGLE:
+                return keys >= from ? keys : -1;
+            case SMALL:
+                for (int i = 0; i < size; i++) {
+                    int key = (keys >>> (5 * i)) & 31;
+                    if (key >= from) {
+                        return key;
+                    }
+                }
+                return -1;
+            case BITMAP:
+            case FULL:
+                if (from > SPACE) {
+                    return -1;
+                }
+                int rest = keys & (-1 << from);
+                return rest == 0 ? -1 : Integer.numberOfTrailingZeros(rest);
+            default:
+                return -1;
+        }
+    }
+
+    /*
+     * Sets the child for letter, replacing any child already there. A null
+     * child removes it. The layout is promoted or demoted to fit the new
+     * number of children.
+     * 
+     * @param letter the letter of the child, 0 for a to 25 for z, or SPACE
+     * @param child the new child, or null
+     */
+    protected void setChild(int letter, Node child) {
+        Node old = getChild(letter);
+        if (child == null && old == null) {
+            return;
+        }
+
+        if (old != null && child != null) {
+            replaceChild(letter, child);
+            return;
+        }
+
+        //collect the children in letter order with the change applied
+        int count = child == null ? size - 1 : size + 1;
+        int[] letters = new int[count];
+        Node[] nodes = new Node[count];
+        int n = 0;
+        boolean placed = child == null;
+        for (int c = nextLetter(0); c >= 0; c = nextLetter(c + 1)) {
+            if (!placed && c > letter) {
+                letters[n] = letter;
+                nodes[n++] = child;
+                placed = true;
+            }
+            if (c != letter) {
+                letters[n] = c;
+                nodes[n++] = getChild(c);
+            }
+        }
+        if (!placed) {
+            letters[n] = letter;
+            nodes[n++] = child;
+        }
+        store(letters, nodes, count);
+    }
+
+    /*
+     * Replaces an existing child in place, the layout does not change
+     */
+    private void replaceChild(int letter, Node child) {
+        switch (kind) {
+            case SINGLE:
+                children = child;
+                return;
+            case SMALL:
+                for (int i = 0; i < size; i++) {
+                    if (((keys >>> (5 * i)) & 31) == letter) {
+                        ((Node[]) children)[i] = child;
+                        return;
+                    }
+                }
+                return;
+            case BITMAP:
+                ((Node[]) children)[Integer.bitCount(keys & ((1 << letter) - 1))] = child;
+                return;
+            default:
+                ((Node[]) children)[letter] = child;
+        }
+    }
+
+    /*
+     * Stores count children, given in letter order, in the smallest layout
+     * that holds them
+     */
+    private void store(int[] letters, Node[] nodes, int count) {
+        this.size = (byte) count;
+        if (count == 0) {
+            this.kind = EMPTY;
+            this.keys = 0;
+            this.children = null;
+        } else if (count == 1) {
+            this.kind = SINGLE;
+            this.keys = letters[0];
+            this.children = nodes[0];
+        } else if (count <= SMALL_MAX) {
+            this.kind = SMALL;
+            this.keys = 0;
+            for (int i = 0; i < count; i++) {
+                this.keys |= letters[i] << (5 * i);
+            }
+            this.children = nodes;
+        } else {
+            this.keys = 0;
+            for (int i = 0; i < count; i++) {
+                this.keys |= 1 << letters[i];
+            }
+            if (count <= BITMAP_MAX) {
+                this.kind = BITMAP;
+                this.children = nodes;
+            } else {
+                Node[] full = new Node[SPACE + 1];
+                for (int i = 0; i < count; i++) {
+                    full[letters[i]] = nodes[i];
+                }
+                this.kind = FULL;
+                this.children = full;
+            }
+        }
+    }
+
+    /*
+     * @return a copy of this node sharing its materialized list and
+     *         children, but with its own child array, so setChild() on the
+     *         copy never changes this node
+     */
+    protected Node copy() {
+        Node copy = new Node();
+        copy.weight = this.weight;
+        copy.children = this.children instanceof Node[]
+                ? ((Node[]) this.children).clone() : this.children;
+        copy.keys = this.keys;
+        copy.kind = this.kind;
+        copy.size = this.size;
+        copy.words = this.words;
+        copy.prefixes = this.prefixes;
+        copy.maxWeight = this.maxWeight;
+        copy.topTerms = this.topTerms;
+        return copy;
+    }
+
+    /*
+     * @return the estimated size of this Node and its child array,
+     *         materialized list not included
+     */
+    protected long estimateShallowBytes() {
+        //children and topTerms references, words, prefixes, keys, weight,
+        //maxWeight, kind, size
+        long bytes = HeapEstimate.object(2 * HeapEstimate.REFERENCE + 4 + 4 + 4 + 8 + 8 + 1 + 1);
+        if (kind == FULL) {
+            bytes += HeapEstimate.array(SPACE + 1, HeapEstimate.REFERENCE);
+        } else if (kind == SMALL || kind == BITMAP) {
+            bytes += HeapEstimate.array(size, HeapEstimate.REFERENCE);
+        }
+        return bytes;
+    }
+
     /*
      * This method is overridden for testing. 
      * 
@@ -111,10 +396,7 @@ public class Node {
     public boolean equals(Object that) {
         if (that instanceof Node) {
             Node thatObject = ((Node) that);
-            return this.getTerm().getTerm().
-                    equals(thatObject.getTerm().getTerm()) &&
-                    this.getTerm().getWeight() == 
-                        thatObject.getTerm().getWeight() &&
+            return this.getWeight() == thatObject.getWeight() &&
                         this.getPrefixes() == thatObject.getPrefixes() &&
                             this.getWords() == thatObject.getWords();
         }
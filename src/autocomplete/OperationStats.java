@@ -0,0 +1,119 @@
+package autocomplete;
+
+/**
+ * A snapshot of the metrics of one kind of query of an
+ * InstrumentedAutocomplete, shown by JMX clients as a composite attribute
+ * of AutocompleteMetricsMXBean.
+ *
+ * The percentiles and means are over the queries measured, the calls are
+ * estimated from them, see InstrumentedAutocomplete.setSampleInterval().
+ *
+ * @author Daniel Xu
+ */
+public final class OperationStats {
+
+    private final long calls;
+    private final long sampled;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+    private final double meanNodes;
+    private final long p99Nodes;
+    private final double meanResults;
+    private final long p99Results;
+
+
+    /*
+     * Reads the histograms of one kind of query
+     */
+    OperationStats(long calls, Histogram latency, Histogram nodes, Histogram results) {
+        this.calls = calls;
+        this.sampled = latency.count();
+        this.p50Nanos = latency.percentile(0.5);
+        this.p99Nanos = latency.percentile(0.99);
+        this.p999Nanos = latency.percentile(0.999);
+        this.maxNanos = latency.max();
+        this.meanNodes = nodes.mean();
+        this.p99Nodes = nodes.percentile(0.99);
+        this.meanResults = results.mean();
+        this.p99Results = results.percentile(0.99);
+    }
+
+    /**
+     * @return the number of queries made, exact if every query is measured
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return the number of queries measured
+     */
+    public long getSampled() {
+        return sampled;
+    }
+
+    /**
+     * @return the median latency, in nanoseconds
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * @return the 99th percentile of the latency, in nanoseconds
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * @return the 99.9th percentile of the latency, in nanoseconds
+     */
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    /**
+     * @return the largest latency, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return the mean number of nodes visited, the prefix walk included
+     */
+    public double getMeanNodes() {
+        return meanNodes;
+    }
+
+    /**
+     * @return the 99th percentile of the nodes visited
+     */
+    public long getP99Nodes() {
+        return p99Nodes;
+    }
+
+    /**
+     * @return the mean number of terms returned, or the mean count
+     */
+    public double getMeanResults() {
+        return meanResults;
+    }
+
+    /**
+     * @return the 99th percentile of the terms returned
+     */
+    public long getP99Results() {
+        return p99Results;
+    }
+
+    @Override
+    public String toString() {
+        return calls + " calls, p50 " + p50Nanos + " ns, p99 " + p99Nanos + " ns, p99.9 "
+                + p999Nanos + " ns, max " + maxNanos + " ns, " + meanNodes + " nodes, "
+                + meanResults + " results";
+    }
+}
@@ -0,0 +1,217 @@
+package autocomplete;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Completion of multi-word phrases, such as the queries of a search log:
+ * typing "interest ra" suggests "interest rate hike".
+ *
+ * Phrases are stored in a trie of Nodes like Autocomplete, with the space
+ * between two words as one more letter after z (Node.SPACE). A prefix is a
+ * path like any other, so the last, partial word of what is typed is
+ * completed below the words typed before it, and getTopSuggestions() is the
+ * same best-first search as for single words, with the same latency.
+ *
+ * Phrases and prefixes are normalized the same way: lower case, and every
+ * run of whitespace is one space. Whitespace at the start is dropped, so is
+ * whitespace at the end of a phrase. At the end of a prefix it is kept as
+ * one space, because it ends a word: "interest" also suggests
+ * "interesting", "interest " only suggests the phrases where another word
+ * follows "interest".
+ *
+ * @author Daniel Xu
+ */
+public class PhraseAutocomplete implements IAutocomplete {
+
+    private final Node rootNode;
+    //runs the searches on rootNode
+    private final Autocomplete searcher;
+    private int numSuggest;
+
+
+    /*
+     * This the constructor for the class
+     */
+    public PhraseAutocomplete() {
+        this.rootNode = new Node();
+        this.searcher = new Autocomplete(rootNode, 0);
+        this.numSuggest = 0;
+    }
+
+    /**
+     * Adds a phrase with its associated weight. A phrase with a character
+     * other than a - z (in any case) and whitespace is ignored.
+     *
+     * @param phrase the phrase to be added, one or more words
+     * @param weight the weight of the phrase
+     */
+    @Override
+    public void addWord(String phrase, long weight) {
+        String normalized = normalize(phrase, false);
+        if (normalized == null || normalized.isEmpty() || weight < 0) {
+            return;
+        }
+
+        Node node = this.rootNode;
+        count(node, weight);
+        for (int i = 0; i < normalized.length(); i++) {
+            int letter = letter(normalized.charAt(i));
+            Node child = node.getChild(letter);
+            if (child == null) {
+                child = new Node();
+                node.setChild(letter, child);
+            }
+            count(child, weight);
+            node = child;
+        }
+        node.setWeight(weight);
+        node.setWords(node.getWords() + 1);
+    }
+
+    /*
+     * Counts one more phrase through node
+     */
+    private static void count(Node node, long weight) {
+        node.setPrefixes(node.getPrefixes() + 1);
+        node.setMaxWeight(Math.max(node.getMaxWeight(), weight));
+        //a materialized list on this path may now be stale
+        node.setTopTerms(null);
+    }
+
+    /**
+     * Reads the phrases of a file in the same "weight\tphrase" format as
+     * Autocomplete.buildTrie()
+     *
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @return the root of the trie
+     */
+    @Override
+    public Node buildTrie(String filename, int k) {
+        this.numSuggest = k;
+        Autocomplete.readTerms(filename, this);
+        return this.rootNode;
+    }
+
+    /**
+     * @return k the the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return this.numSuggest;
+    }
+
+    /**
+     * @param prefix
+     * @return the root of the subTrie of the normalized prefix, or null
+     */
+    @Override
+    public Node getSubTrie(String prefix) {
+        return locate(normalize(prefix, true));
+    }
+
+    /**
+     * @param prefix
+     * @return the number of phrases that start with prefix.
+     */
+    @Override
+    public int countPrefixes(String prefix) {
+        Node node = getSubTrie(prefix);
+        return node == null ? 0 : node.getPrefixes();
+    }
+
+    /**
+     * @param prefix
+     * @return a List containing all the phrases starting with prefix, in
+     *         lexicographic order (a space sorts after z)
+     */
+    @Override
+    public List<ITerm> getSuggestions(String prefix) {
+        String normalized = normalize(prefix, true);
+        Node node = locate(normalized);
+        if (node == null) {
+            return new ArrayList<ITerm>();
+        }
+        return searcher.suggestionsAt(node, normalized);
+    }
+
+    /**
+     * @param prefix
+     * @param k the maximum number of phrases to return
+     * @return a List of at most k phrases starting with prefix, sorted by
+     *         descending weight
+     */
+    @Override
+    public List<ITerm> getTopSuggestions(String prefix, int k) {
+        String normalized = normalize(prefix, true);
+        Node node = locate(normalized);
+        if (node == null) {
+            return new ArrayList<ITerm>();
+        }
+        return searcher.topSuggestionsAt(node, normalized, k);
+    }
+
+    /**
+     * Precomputes the k heaviest phrases of every prefix of up to maxDepth
+     * characters, see Autocomplete.materialize()
+     *
+     * @param k the number of phrases to store per node, 0 removes all lists
+     * @param maxDepth the longest prefix that gets a list
+     */
+    public void materialize(int k, int maxDepth) {
+        searcher.materialize(k, maxDepth);
+    }
+
+    /*
+     * This walks the trie along a normalized prefix
+     *
+     * @return the node at the end of prefix, or null
+     */
+    private Node locate(String prefix) {
+        if (prefix == null) {
+            return null;
+        }
+        Node node = this.rootNode;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.getChild(letter(prefix.charAt(i)));
+        }
+        return node;
+    }
+
+    private static int letter(char c) {
+        return c == ' ' ? Node.SPACE : c - 97;
+    }
+
+    /*
+     * @param text a phrase or a prefix
+     * @param prefix whether whitespace at the end of text is kept as a space
+     * @return text in lower case with every run of whitespace as one space,
+     *         or null if text is null or has other characters than letters
+     *         and whitespace
+     */
+    static String normalize(String text, boolean prefix) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else if (c >= 'a' && c <= 'z') {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(c);
+            } else {
+                return null;
+            }
+        }
+        if (space && prefix) {
+            normalized.append(' ');
+        }
+        return normalized.toString();
+    }
+}
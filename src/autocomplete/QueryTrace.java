@@ -0,0 +1,138 @@
+package autocomplete;
+
+/**
+ * The work done by one query of an Autocomplete, as reported by
+ * InstrumentedAutocomplete.explain().
+ *
+ * A query first walks down the prefix, one node per letter, then works
+ * below the node of the prefix:
+ * - getSuggestions() visits every node of the subtree, so its cost is the
+ *   size of the subtree however few words it holds
+ * - getTopSuggestions() expands nodes best-first and drops the children
+ *   whose max weight cannot reach the k best words found so far. Many
+ *   expanded nodes for few results, or a large frontier, point to a prefix
+ *   whose heavy words are deep or spread over many branches; a prefix with
+ *   a materialized list expands none.
+ * - getSubTrie() and countPrefixes() stop at the node of the prefix
+ *
+ * @author Daniel Xu
+ */
+public final class QueryTrace {
+
+    private final String operation;
+    private final String prefix;
+    int prefixNodes;
+    boolean found;
+    int nodesVisited;
+    int branchesPruned;
+    int maxFrontier;
+    boolean materialized;
+    int results;
+    long nanos;
+
+
+    /*
+     * @param operation the name of the query
+     * @param prefix the prefix queried
+     */
+    QueryTrace(String operation, String prefix) {
+        this.operation = operation;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return the name of the query, such as "getTopSuggestions"
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the prefix queried
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return the number of letters of the prefix walked down
+     */
+    public int getPrefixNodes() {
+        return prefixNodes;
+    }
+
+    /**
+     * @return whether the trie has a node for the prefix
+     */
+    public boolean isFound() {
+        return found;
+    }
+
+    /**
+     * @return the number of nodes visited or expanded below the node of the
+     *         prefix, the node itself included
+     */
+    public int getNodesVisited() {
+        return nodesVisited;
+    }
+
+    /**
+     * @return the number of children getTopSuggestions() did not expand
+     *         because their max weight was below the k-th best word
+     */
+    public int getBranchesPruned() {
+        return branchesPruned;
+    }
+
+    /**
+     * @return the largest size of the getTopSuggestions() frontier
+     */
+    public int getMaxFrontier() {
+        return maxFrontier;
+    }
+
+    /**
+     * @return whether getTopSuggestions() was answered from a list stored by
+     *         Autocomplete.materialize()
+     */
+    public boolean isMaterialized() {
+        return materialized;
+    }
+
+    /**
+     * @return the number of terms returned, or the count of countPrefixes()
+     */
+    public int getResults() {
+        return results;
+    }
+
+    /**
+     * @return the time the query took, in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return a few lines describing the work of the query
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(operation).append("(\"").append(prefix).append("\"): ")
+            .append(results).append(" results in ").append(nanos / 1000).append(" us\n");
+        report.append("  prefix: ").append(prefixNodes).append(" letters walked, ")
+            .append(found ? "found" : "not found").append('\n');
+        if (materialized) {
+            report.append("  served from the materialized list of the prefix\n");
+        } else {
+            report.append("  below the prefix: ").append(nodesVisited).append(" nodes visited");
+            if (maxFrontier > 0) {
+                report.append(", ").append(branchesPruned).append(" branches pruned, ")
+                    .append("frontier of at most ").append(maxFrontier);
+            }
+            report.append('\n');
+        }
+        return report.toString();
+    }
+}
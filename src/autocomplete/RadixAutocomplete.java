@@ -0,0 +1,422 @@
+package autocomplete;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+    /*
+     * @Author Daniel Xu
+     */
+
+/**
+ * A path-compressed (radix / Patricia) version of Autocomplete. Every edge
+ * holds a run of letters, so a node only exists where words branch or end, and
+ * children are kept in an array exactly as long as the number of children
+ * instead of a Node[26].
+ *
+ * getSubTrie(), countPrefixes(), getSuggestions() and getTopSuggestions()
+ * return the same results as Autocomplete for the same words. getSubTrie()
+ * and buildTrie() return a detached Node holding the term and counts of the
+ * matching radix node; its child array is left empty.
+ */
+public class RadixAutocomplete implements IAutocomplete {
+
+    private RadixNode rootNode;
+    private int numSuggest;
+
+    /*
+     * This the constructor for the class
+     */
+    public RadixAutocomplete() {
+        this.numSuggest = 0;
+        this.rootNode = new RadixNode(new byte[0]);
+        this.rootNode.setTerm(new Term("", 0));
+    }
+
+    /**
+     * Adds a new word with its associated weight to the trie. Words sharing
+     * only part of an edge split that edge in two.
+     *
+     * @param word the word to be added to the trie
+     * @param weight the weight of the word
+     */
+    @Override
+    public void addWord(String word, long weight) {
+        if (word == null || word.isEmpty() || !isLowerCase(word)) {
+            return;
+        }
+
+        RadixNode node = this.rootNode;
+        node.setPrefixes(node.getPrefixes() + 1);
+        node.setMaxWeight(Math.max(node.getMaxWeight(), weight));
+
+        int i = 0;
+        while (i < word.length()) {
+            RadixNode child = node.getChild((byte) word.charAt(i));
+
+            //no edge starts with this letter, the rest of the word is a new leaf
+            if (child == null) {
+                RadixNode leaf = new RadixNode(letters(word, i, word.length()));
+                leaf.setTerm(new Term(word, weight));
+                leaf.setWords(1);
+                leaf.setPrefixes(1);
+                leaf.setMaxWeight(weight);
+                node.putChild(leaf);
+                return;
+            }
+
+            byte[] label = child.getLabel();
+            int common = 0;
+            while (common < label.length && i + common < word.length()
+                    && label[common] == word.charAt(i + common)) {
+                common++;
+            }
+
+            //the word leaves the edge part way, split it at that point
+            if (common < label.length) {
+                RadixNode middle = new RadixNode(copyOf(label, 0, common));
+                middle.setPrefixes(child.getPrefixes());
+                middle.setMaxWeight(child.getMaxWeight());
+                //replace child while its label still starts with the same letter
+                node.putChild(middle);
+                child.setLabel(copyOf(label, common, label.length));
+                middle.putChild(child);
+                child = middle;
+            }
+
+            child.setPrefixes(child.getPrefixes() + 1);
+            child.setMaxWeight(Math.max(child.getMaxWeight(), weight));
+            node = child;
+            i += common;
+        }
+
+        node.setTerm(new Term(word, weight));
+        node.setWords(node.getWords() + 1);
+    }
+
+    /**
+     * Initializes the trie from a file in the same format as
+     * Autocomplete.buildTrie()
+     *
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @return a detached Node with the counts of the root
+     */
+    @Override
+    public Node buildTrie(String filename, int k) {
+        this.numSuggest = k;
+        Autocomplete.readTerms(filename, this);
+        return toNode(this.rootNode, "");
+    }
+
+    /**
+     * @return k the the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return this.numSuggest;
+    }
+
+    /**
+     * @param prefix
+     * @return a detached Node with the term and counts of the subtrie
+     *         corresponding to the last character of the prefix, or null
+     */
+    @Override
+    public Node getSubTrie(String prefix) {
+        RadixNode node = locate(prefix);
+        if (node == null) {
+            return null;
+        }
+        return toNode(node, prefix);
+    }
+
+    /**
+     * @param prefix
+     * @return the number of words that start with prefix.
+     */
+    @Override
+    public int countPrefixes(String prefix) {
+        RadixNode node = locate(prefix);
+        if (node == null) {
+            return 0;
+        }
+        return node.getPrefixes();
+    }
+
+    /**
+     * @param prefix
+     * @return a List containing all the ITerm objects with query starting with
+     *         prefix, in lexicographic order. Return an empty list if there are
+     *         no ITerm object starting with prefix.
+     */
+    @Override
+    public List<ITerm> getSuggestions(String prefix) {
+        List<ITerm> container = new ArrayList<ITerm>();
+        RadixNode node = locate(prefix);
+
+        if (node != null) {
+            suggestHelper(node, container);
+        }
+
+        Collections.sort(container);
+        return container;
+    }
+
+    /**
+     * Best-first search ranked by the max weight of every subtree, dropping
+     * the subtrees that cannot beat the k-th best word pushed so far, see
+     * Autocomplete.getTopSuggestions()
+     *
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects starting with prefix, sorted by
+     *         descending weight
+     */
+    @Override
+    public List<ITerm> getTopSuggestions(String prefix, int k) {
+        List<ITerm> container = new ArrayList<ITerm>();
+        RadixNode node = locate(prefix);
+
+        if (node == null || k <= 0) {
+            return container;
+        }
+
+        PriorityQueue<Candidate> frontier = new PriorityQueue<Candidate>();
+        //min-heap of the k best word weights pushed so far
+        PriorityQueue<Long> best = new PriorityQueue<Long>();
+        frontier.add(new Candidate(node, "", null, node.getMaxWeight()));
+
+        while (!frontier.isEmpty() && container.size() < k) {
+            Candidate next = frontier.poll();
+
+            if (next.term != null) {
+                container.add(next.term);
+                continue;
+            }
+
+            Term term = next.node.getTerm();
+            if (term != null && !term.getTerm().equals("")) {
+                frontier.add(new Candidate(null, next.path, term, term.getWeight()));
+                best.add(term.getWeight());
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+
+            long floor = best.size() == k ? best.peek() : Long.MIN_VALUE;
+            for (RadixNode child : next.node.getChildren()) {
+                if (child.getMaxWeight() >= floor) {
+                    String path = next.path
+                            + new String(child.getLabel(), StandardCharsets.US_ASCII);
+                    frontier.add(new Candidate(child, path, null, child.getMaxWeight()));
+                }
+            }
+        }
+        return container;
+    }
+
+    /**
+     * @return the number of RadixNodes in the trie, the root included
+     */
+    public int countNodes() {
+        return countHelper(this.rootNode);
+    }
+
+    /**
+     * @return an estimate in bytes of the heap used by the RadixNodes of the
+     *         trie, their labels, child arrays and Terms
+     */
+    public long estimateHeapBytes() {
+        return heapHelper(this.rootNode);
+    }
+
+    /*
+     * This walks the trie along prefix
+     *
+     * @param prefix
+     * @return the node at or right below the end of prefix, null if prefix is
+     *         invalid or no word starts with it
+     */
+    private RadixNode locate(String prefix) {
+        if (prefix == null || !isLowerCase(prefix)) {
+            return null;
+        }
+
+        RadixNode node = this.rootNode;
+        int i = 0;
+        while (i < prefix.length()) {
+            node = node.getChild((byte) prefix.charAt(i));
+            if (node == null) {
+                return null;
+            }
+
+            byte[] label = node.getLabel();
+            for (int j = 0; j < label.length && i < prefix.length(); j++, i++) {
+                if (label[j] != prefix.charAt(i)) {
+                    return null;
+                }
+            }
+        }
+        return node;
+    }
+
+    /*
+     * This method is a helper function for getSuggestions()
+     *
+     * @param node the node at the end of the prefix
+     * @param container is the list that stores all the terms
+     */
+    private void suggestHelper(RadixNode node, List<ITerm> container) {
+        Term term = node.getTerm();
+        if (term != null && !term.getTerm().equals("")) {
+            container.add(term);
+        }
+        for (RadixNode child : node.getChildren()) {
+            suggestHelper(child, container);
+        }
+    }
+
+    /*
+     * This method is a helper function for countNodes()
+     */
+    private int countHelper(RadixNode node) {
+        int count = 1;
+        for (RadixNode child : node.getChildren()) {
+            count += countHelper(child);
+        }
+        return count;
+    }
+
+    /*
+     * This method is a helper function for estimateHeapBytes()
+     */
+    private long heapHelper(RadixNode node) {
+        //label, children and term references, words, prefixes, maxWeight
+        long bytes = HeapEstimate.object(3 * HeapEstimate.REFERENCE + 4 + 4 + 8)
+                + HeapEstimate.array(node.getLabel().length, 1)
+                + HeapEstimate.term(node.getTerm());
+        if (node.getChildren().length > 0) {
+            bytes += HeapEstimate.array(node.getChildren().length, HeapEstimate.REFERENCE);
+        }
+
+        for (RadixNode child : node.getChildren()) {
+            bytes += heapHelper(child);
+        }
+        return bytes;
+    }
+
+    /*
+     * This builds the Node returned by getSubTrie(). The term is only kept if
+     * the prefix ends exactly at node and not part way along its edge.
+     *
+     * @param node the radix node found for prefix
+     * @param prefix the prefix that was looked up
+     * @return a Node with the same term and counts Autocomplete would return
+     */
+    private Node toNode(RadixNode node, String prefix) {
+        Term term = node.getTerm();
+        Node result;
+        if (term != null && term.getTerm().length() == prefix.length()) {
+            result = new Node(term.getTerm(), term.getWeight());
+            result.setWords(node.getWords());
+        } else {
+            result = new Node();
+        }
+        result.setPrefixes(node.getPrefixes());
+        result.setMaxWeight(node.getMaxWeight());
+        return result;
+    }
+
+    /*
+     * @return true if every character of word is between a and z
+     */
+    private static boolean isLowerCase(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            int tmp = word.charAt(i);
+            if (tmp < 97 || tmp > 122) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * @return the letters of word between start and end as bytes
+     */
+    private static byte[] letters(String word, int start, int end) {
+        byte[] label = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            label[i - start] = (byte) word.charAt(i);
+        }
+        return label;
+    }
+
+    /*
+     * @return a copy of label between start and end
+     */
+    private static byte[] copyOf(byte[] label, int start, int end) {
+        byte[] copy = new byte[end - start];
+        System.arraycopy(label, start, copy, 0, end - start);
+        return copy;
+    }
+
+    /**
+     * Builds both tries from the same file and prints their node counts and
+     * estimated heap usage. The file is read with buildTrieMapped(), so it
+     * can be in either format, such as the Autocomplete.txt of IndexBuilder.
+     *
+     * @param args the autocomplete file, Autocomplete.txt by default
+     */
+    public static void main(String[] args) {
+        String filename = args.length > 0 ? args[0] : "Autocomplete.txt";
+
+        Autocomplete trie = new Autocomplete();
+        trie.buildTrieMapped(filename, 0, Runtime.getRuntime().availableProcessors());
+        RadixAutocomplete radix = new RadixAutocomplete();
+        for (ITerm term : trie.getSuggestions("")) {
+            radix.addWord(term.getTerm(), term.getWeight());
+        }
+
+        System.out.println("words:        " + trie.countPrefixes(""));
+        System.out.println("Node:         " + trie.countNodes() + " nodes, "
+                + trie.estimateHeapBytes() + " bytes");
+        System.out.println("RadixNode:    " + radix.countNodes() + " nodes, "
+                + radix.estimateHeapBytes() + " bytes");
+    }
+
+    /*
+     * An entry of the getTopSuggestions() frontier, ordered like the one in
+     * Autocomplete
+     */
+    private static class Candidate implements Comparable<Candidate> {
+
+        private final RadixNode node;
+        //the letters from the node of the prefix down to the end of node
+        private final String path;
+        private final Term term;
+        private final long weight;
+
+        Candidate(RadixNode node, String path, Term term, long weight) {
+            this.node = node;
+            this.path = path;
+            this.term = term;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(Candidate that) {
+            if (this.weight != that.weight) {
+                return this.weight > that.weight ? -1 : 1;
+            }
+            int order = this.path.compareTo(that.path);
+            if (order != 0) {
+                return order;
+            }
+            //a node before its own word, which only exists once it is expanded
+            return (this.term == null ? 0 : 1) - (that.term == null ? 0 : 1);
+        }
+    }
+
+}
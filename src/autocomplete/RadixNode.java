@@ -0,0 +1,169 @@
+package autocomplete;
+
+/**
+ * ==== Attributes ====
+ * - label: the run of letters on the edge leading to this node
+ * - term: the Term ending at this node, null if no word ends here
+ * - words: number of times the word ending at this node was added
+ * - prefixes: number of words going through this node
+ * - maxWeight: the largest weight of any word in this node's subtree
+ * - children: child nodes sorted by the first letter of their label, empty
+ *   for a leaf. The array is exactly as long as the number of children.
+ *
+ * Used by RadixAutocomplete, where every chain of single-child nodes of the
+ * plain trie is collapsed into one edge.
+ *
+ * @author Daniel Xu
+ */
+class RadixNode {
+
+    private static final RadixNode[] NO_CHILDREN = new RadixNode[0];
+
+    private byte[] label;
+    private RadixNode[] children;
+    private Term term;
+    private int words;
+    private int prefixes;
+    private long maxWeight;
+
+
+    /*
+     * This is a node constructor for an edge with the given letters
+     */
+    RadixNode(byte[] label) {
+        this.label = label;
+        this.children = NO_CHILDREN;
+        this.term = null;
+        this.words = 0;
+        this.prefixes = 0;
+        this.maxWeight = 0;
+    }
+
+    /*
+     * @return the letters on the edge leading to this node
+     */
+    byte[] getLabel() {
+        return label;
+    }
+
+    /*
+     * @param sets the letters on the edge leading to this node
+     */
+    void setLabel(byte[] label) {
+        this.label = label;
+    }
+
+    /*
+     * @return the Term ending at this node
+     */
+    Term getTerm() {
+        return term;
+    }
+
+    /*
+     * @param sets the Term ending at this node
+     */
+    void setTerm(Term term) {
+        this.term = term;
+    }
+
+    /*
+     * @return the number of words
+     */
+    int getWords() {
+        return words;
+    }
+
+    /*
+     * @param sets the number of words
+     */
+    void setWords(int words) {
+        this.words = words;
+    }
+
+    /*
+     * @return the number of prefixes
+     */
+    int getPrefixes() {
+        return prefixes;
+    }
+
+    /*
+     * @param sets the number prefixes
+     */
+    void setPrefixes(int prefixes) {
+        this.prefixes = prefixes;
+    }
+
+    /*
+     * @return the largest weight in this subtree
+     */
+    long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /*
+     * @param sets the largest weight in this subtree
+     */
+    void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /*
+     * @return the children of this node, sorted by first letter
+     */
+    RadixNode[] getChildren() {
+        return children;
+    }
+
+    /*
+     * @param letter the first letter of the child's label
+     * @return the child whose label starts with letter, or null
+     */
+    RadixNode getChild(byte letter) {
+        int index = indexOf(letter);
+        return index >= 0 ? children[index] : null;
+    }
+
+    /*
+     * Adds child, or replaces the child whose label starts with the same letter
+     *
+     * @param child the node to add
+     */
+    void putChild(RadixNode child) {
+        int index = indexOf(child.label[0]);
+        if (index >= 0) {
+            children[index] = child;
+            return;
+        }
+
+        int insert = -index - 1;
+        RadixNode[] grown = new RadixNode[children.length + 1];
+        System.arraycopy(children, 0, grown, 0, insert);
+        grown[insert] = child;
+        System.arraycopy(children, insert, grown, insert + 1, children.length - insert);
+        this.children = grown;
+    }
+
+    /*
+     * Binary search on the first letter of the children's labels
+     *
+     * @return the index of the child, or (-(insertion point) - 1)
+     */
+    private int indexOf(byte letter) {
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            byte found = children[mid].label[0];
+            if (found < letter) {
+                low = mid + 1;
+            } else if (found > letter) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
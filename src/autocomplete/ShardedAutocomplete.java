@@ -0,0 +1,422 @@
+package autocomplete;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A dictionary split into shards by the hash of each word, queried by
+ * scatter-gather.
+ *
+ * ==== Shards ====
+ * Every word lives in exactly one shard, a ConcurrentAutocomplete, chosen
+ * by shardOf(). A prefix can match words of every shard, so a query is sent
+ * to all of them: getTopSuggestions() asks each shard for its own top k and
+ * merges the sorted lists with a k-way heap, getSuggestions() merges the
+ * lexicographic lists the same way, and countPrefixes() is the sum over the
+ * shards. A word added twice goes to the same shard both times, so the
+ * shards never disagree about a word and the merge needs no deduplication.
+ *
+ * ==== Fan-out ====
+ * The shards are queried in parallel on a pool of parallelism - 1 daemon
+ * threads, the calling thread taking the first shard itself. The pool
+ * threads stop when idle, so an unused instance holds no thread. With a
+ * parallelism of 1 the shards are queried one after the other on the
+ * calling thread. countPrefixes() always is: it is a walk down one path
+ * per shard, shorter than handing it to another thread.
+ *
+ * ==== Rebuilds ====
+ * Each shard is held in an atomic slot. buildTrie() builds new shards from
+ * the file in parallel and swaps them in, rebuildShard() builds and swaps a
+ * single one; queries keep running on the other shards meanwhile, and on
+ * the previous version of the rebuilt shard until the swap.
+ *
+ * @author Daniel Xu
+ */
+public class ShardedAutocomplete implements IAutocomplete {
+
+    private static final Comparator<ITerm> BY_TERM = new Comparator<ITerm>() {
+        @Override
+        public int compare(ITerm a, ITerm b) {
+            return a.getTerm().compareTo(b.getTerm());
+        }
+    };
+
+    private final AtomicReferenceArray<ConcurrentAutocomplete> shards;
+    //null when the shards are queried on the calling thread
+    private final ThreadPoolExecutor workers;
+    private volatile int numSuggest;
+
+
+    /*
+     * This makes empty shards queried with one thread per shard
+     *
+     * @param shardCount the number of shards
+     */
+    public ShardedAutocomplete(int shardCount) {
+        this(shardCount, Math.min(shardCount, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /*
+     * This makes empty shards
+     *
+     * @param shardCount the number of shards
+     * @param parallelism the number of threads a query runs on, the calling
+     *                    thread included
+     */
+    public ShardedAutocomplete(int shardCount, int parallelism) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.shards = new AtomicReferenceArray<ConcurrentAutocomplete>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.set(i, new ConcurrentAutocomplete());
+        }
+        this.numSuggest = 0;
+
+        int threads = Math.min(parallelism, shardCount) - 1;
+        if (threads == 0) {
+            this.workers = null;
+        } else {
+            this.workers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable task) {
+                            Thread thread = new Thread(task, "autocomplete-shard");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            workers.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * @param word a word
+     * @return the shard word is stored in
+     */
+    public int shardOf(String word) {
+        int hash = word.hashCode();
+        //String hashes of short words differ mostly in the low bits
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash * 0x9E3779B9, shards.length());
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int shardCount() {
+        return shards.length();
+    }
+
+    /**
+     * Adds a new word with its associated weight to its shard
+     *
+     * @param word the word to be added to the Trie
+     * @param weight the weight of the word
+     */
+    @Override
+    public void addWord(String word, long weight) {
+        if (!Autocomplete.isWord(word)) {
+            return;
+        }
+        shards.get(shardOf(word)).addWord(word, weight);
+    }
+
+    /**
+     * Reads the file the same way as Autocomplete.buildTrie(), and replaces
+     * every shard with a new one holding its words of the file. The shards
+     * are built in parallel.
+     *
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @return a detached Node with the merged counts of all shards
+     */
+    @Override
+    public Node buildTrie(String filename, int k) {
+        this.numSuggest = k;
+        final TermBuffer[] parts = partition(filename, -1);
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(parts.length);
+        for (int i = 0; i < parts.length; i++) {
+            final int shard = i;
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    install(shard, parts[shard]);
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+        return getSubTrie("");
+    }
+
+    /**
+     * Replaces one shard with a new one holding the words of the file that
+     * belong to it. The other shards are not touched, and queries on this
+     * shard see its previous version until the new one is built.
+     *
+     * @param shard the shard to rebuild
+     * @param filename the file to read all the autocomplete data from
+     * @throws IndexOutOfBoundsException if shard is not a shard
+     */
+    public void rebuildShard(int shard, String filename) {
+        if (shard < 0 || shard >= shards.length()) {
+            throw new IndexOutOfBoundsException("no shard " + shard);
+        }
+        install(shard, partition(filename, shard)[shard]);
+    }
+
+    /*
+     * Reads the file into one buffer per shard
+     *
+     * @param only the shard to keep the words of, -1 for every shard
+     */
+    private TermBuffer[] partition(String filename, final int only) {
+        final TermBuffer[] parts = new TermBuffer[shards.length()];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new TermBuffer();
+        }
+        Autocomplete.readTerms(filename, new ObjLongConsumer<String>() {
+            public void accept(String word, long weight) {
+                if (!Autocomplete.isWord(word)) {
+                    return;
+                }
+                int shard = shardOf(word);
+                if (only < 0 || shard == only) {
+                    parts[shard].add(word, weight);
+                }
+            }
+        });
+        return parts;
+    }
+
+    private void install(int shard, TermBuffer terms) {
+        ConcurrentAutocomplete fresh = new ConcurrentAutocomplete();
+        fresh.addWords(terms);
+        shards.set(shard, fresh);
+    }
+
+    /**
+     * @return k the the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return this.numSuggest;
+    }
+
+    /**
+     * @param prefix
+     * @return a detached Node with the merged term and counts of prefix, or
+     *         null if no shard has it. Its child array is left empty.
+     */
+    @Override
+    public Node getSubTrie(String prefix) {
+        int count = 0;
+        long maxWeight = 0;
+        boolean found = false;
+        long weight = -1;
+        int words = 0;
+
+        for (int i = 0; i < shards.length(); i++) {
+            Node node = shards.get(i).getSubTrie(prefix);
+            if (node == null) {
+                continue;
+            }
+            found = true;
+            count += node.getPrefixes();
+            maxWeight = Math.max(maxWeight, node.getMaxWeight());
+            words += node.getWords();
+            //only the shard of the word can hold it
+            if (node.getWords() > 0) {
+                weight = node.getWeight();
+            }
+        }
+        if (!found) {
+            return null;
+        }
+
+        Node result = weight < 0 ? new Node() : new Node(prefix, weight);
+        result.setPrefixes(count);
+        result.setWords(words);
+        result.setMaxWeight(maxWeight);
+        return result;
+    }
+
+    /**
+     * @param prefix
+     * @return the number of words that start with prefix, summed over the
+     *         shards
+     */
+    @Override
+    public int countPrefixes(String prefix) {
+        int count = 0;
+        for (int i = 0; i < shards.length(); i++) {
+            count += shards.get(i).countPrefixes(prefix);
+        }
+        return count;
+    }
+
+    /**
+     * @param prefix
+     * @return a List containing all the ITerm objects with query starting with
+     *         prefix, in lexicographic order. Return an empty list if there are
+     *         no ITerm object starting with prefix.
+     */
+    @Override
+    public List<ITerm> getSuggestions(final String prefix) {
+        List<List<ITerm>> lists = fanOut(new Function<IAutocomplete, List<ITerm>>() {
+            public List<ITerm> apply(IAutocomplete shard) {
+                return shard.getSuggestions(prefix);
+            }
+        });
+        return merge(lists, BY_TERM, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Asks every shard for its k heaviest words and merges them
+     *
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects starting with prefix, sorted by
+     *         descending weight
+     */
+    @Override
+    public List<ITerm> getTopSuggestions(final String prefix, final int k) {
+        if (prefix == null || k <= 0) {
+            return new ArrayList<ITerm>();
+        }
+        List<List<ITerm>> lists = fanOut(new Function<IAutocomplete, List<ITerm>>() {
+            public List<ITerm> apply(IAutocomplete shard) {
+                return shard.getTopSuggestions(prefix, k);
+            }
+        });
+        return merge(lists, Autocomplete.BY_WEIGHT_THEN_TERM, k);
+    }
+
+    /*
+     * Runs query on every shard, the first one on the calling thread
+     *
+     * @return the result of each shard, in shard order
+     */
+    private <T> List<T> fanOut(final Function<IAutocomplete, T> query) {
+        int n = shards.length();
+        List<T> results = new ArrayList<T>(n);
+        if (workers == null) {
+            for (int i = 0; i < n; i++) {
+                results.add(query.apply(shards.get(i)));
+            }
+            return results;
+        }
+
+        List<Future<T>> pending = new ArrayList<Future<T>>(n - 1);
+        for (int i = 1; i < n; i++) {
+            final IAutocomplete shard = shards.get(i);
+            pending.add(workers.submit(new Callable<T>() {
+                public T call() {
+                    return query.apply(shard);
+                }
+            }));
+        }
+        try {
+            results.add(query.apply(shards.get(0)));
+            for (Future<T> future : pending) {
+                results.add(await(future));
+            }
+        } finally {
+            for (Future<T> future : pending) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /*
+     * Runs every task, on the workers when there are any
+     */
+    private void runAll(List<Callable<Void>> tasks) {
+        if (workers == null) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return;
+        }
+        List<Future<Void>> pending = new ArrayList<Future<Void>>(tasks.size());
+        for (Callable<Void> task : tasks) {
+            pending.add(workers.submit(task));
+        }
+        for (Future<Void> future : pending) {
+            await(future);
+        }
+    }
+
+    /*
+     * @return the result of future, rethrowing what the task threw
+     */
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a shard", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /*
+     * Merges lists each sorted by order with a heap of the head of every list
+     *
+     * @param limit the maximum number of terms to return
+     * @return the first limit terms of all the lists, sorted by order
+     */
+    private static List<ITerm> merge(final List<List<ITerm>> lists, final Comparator<ITerm> order,
+            int limit) {
+        List<ITerm> container = new ArrayList<ITerm>();
+        //{list, position} of the head of each list not exhausted
+        PriorityQueue<int[]> heads = new PriorityQueue<int[]>(Math.max(1, lists.size()),
+                new Comparator<int[]>() {
+                    @Override
+                    public int compare(int[] a, int[] b) {
+                        return order.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1]));
+                    }
+                });
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) {
+                heads.add(new int[] {i, 0});
+            }
+        }
+
+        while (!heads.isEmpty() && container.size() < limit) {
+            int[] head = heads.poll();
+            List<ITerm> list = lists.get(head[0]);
+            container.add(list.get(head[1]));
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return container;
+    }
+}
@@ -0,0 +1,171 @@
+package autocomplete;
+import java.util.Arrays;
+
+/**
+ * Bulk loads words given in lexicographic order into an Autocomplete.
+ *
+ * The loader keeps the path of the previous word on a stack. A new word only
+ * pops the nodes below its longest common prefix with the previous word and
+ * pushes the letters after it, so no word is walked from the root. The
+ * prefix counts and max weights are not added node by node either: each word
+ * is counted once at its last node, and a node passes its pending count and
+ * max weight on to its parent when it is popped. Loading is therefore linear
+ * in the total length of the input.
+ *
+ * The counts of the trie are only complete after finish(), which must be
+ * called before the trie is queried.
+ *
+ * A word smaller than the previous one is either inserted with addWord()
+ * (the stack stays valid, since addWord() only adds to it), or rejected with
+ * an IllegalArgumentException when the loader is strict.
+ *
+ * @author Daniel Xu
+ */
+public class SortedTrieLoader {
+
+    private final Autocomplete target;
+    private final boolean strict;
+
+    //path[d] is the node of the first d letters of previous
+    private Node[] path;
+    //count and max weight not yet added to path[d] and its ancestors
+    private int[] pending;
+    private long[] pendingMax;
+    private String previous;
+    private int loaded;
+    private int unsorted;
+
+
+    /*
+     * @param target the trie the words are added to, may already hold words
+     * @param strict whether out of order words are rejected instead of being
+     *               inserted with addWord()
+     */
+    public SortedTrieLoader(Autocomplete target, boolean strict) {
+        this.target = target;
+        this.strict = strict;
+        this.path = new Node[16];
+        this.pending = new int[16];
+        this.pendingMax = new long[16];
+        this.path[0] = target.getRootNode();
+        this.pendingMax[0] = Long.MIN_VALUE;
+        this.previous = "";
+        this.loaded = 0;
+        this.unsorted = 0;
+    }
+
+    /**
+     * Adds a word that is not smaller than the previous one. Words addWord()
+     * would reject are skipped.
+     *
+     * @param word the word to be added to the trie
+     * @param weight the weight of the word
+     * @throws IllegalArgumentException if the loader is strict and word is
+     *         smaller than the previous word
+     */
+    public void add(String word, long weight) {
+        if (!Autocomplete.isWord(word)) {
+            return;
+        }
+
+        if (word.compareTo(previous) < 0) {
+            if (strict) {
+                throw new IllegalArgumentException("input is not sorted: \""
+                        + word + "\" comes after \"" + previous + "\"");
+            }
+            target.addWord(word, weight);
+            unsorted++;
+            return;
+        }
+
+        int common = 0;
+        int max = Math.min(word.length(), previous.length());
+        while (common < max && word.charAt(common) == previous.charAt(common)) {
+            common++;
+        }
+
+        for (int depth = previous.length(); depth > common; depth--) {
+            pop(depth);
+        }
+
+        ensureDepth(word.length());
+        for (int depth = common + 1; depth <= word.length(); depth++) {
+            int letter = word.charAt(depth - 1) - 97;
+            Node parent = path[depth - 1];
+            Node child = parent.getChild(letter);
+            if (child == null) {
+                child = new Node();
+                parent.setChild(letter, child);
+            }
+            path[depth] = child;
+            pending[depth] = 0;
+            pendingMax[depth] = Long.MIN_VALUE;
+        }
+
+        Node last = path[word.length()];
+        last.setWeight(weight);
+        last.setWords(last.getWords() + 1);
+        pending[word.length()]++;
+        pendingMax[word.length()] = Math.max(pendingMax[word.length()], weight);
+
+        previous = word;
+        loaded++;
+    }
+
+    /**
+     * Adds the pending counts of the whole stack to the trie. The loader can
+     * keep being used afterwards.
+     */
+    public void finish() {
+        for (int depth = previous.length(); depth > 0; depth--) {
+            pop(depth);
+        }
+        Node root = path[0];
+        root.setPrefixes(root.getPrefixes() + pending[0]);
+        root.setMaxWeight(Math.max(root.getMaxWeight(), pendingMax[0]));
+        root.setTopTerms(null);
+        pending[0] = 0;
+        pendingMax[0] = Long.MIN_VALUE;
+        previous = "";
+    }
+
+    /**
+     * @return the number of words added in order
+     */
+    public int getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the number of out of order words inserted with addWord()
+     */
+    public int getUnsorted() {
+        return unsorted;
+    }
+
+    /*
+     * Adds the pending count of path[depth] to it and hands it on to its parent
+     */
+    private void pop(int depth) {
+        Node node = path[depth];
+        node.setPrefixes(node.getPrefixes() + pending[depth]);
+        node.setMaxWeight(Math.max(node.getMaxWeight(), pendingMax[depth]));
+        node.setTopTerms(null);
+
+        pending[depth - 1] += pending[depth];
+        pendingMax[depth - 1] = Math.max(pendingMax[depth - 1], pendingMax[depth]);
+        path[depth] = null;
+    }
+
+    /*
+     * Grows the stack so it can hold a path of the given depth
+     */
+    private void ensureDepth(int depth) {
+        if (depth >= path.length) {
+            int length = Math.max(depth + 1, path.length * 2);
+            path = Arrays.copyOf(path, length);
+            pending = Arrays.copyOf(pending, length);
+            pendingMax = Arrays.copyOf(pendingMax, length);
+        }
+    }
+}
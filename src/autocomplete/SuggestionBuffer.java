@@ -0,0 +1,485 @@
+package autocomplete;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reusable result buffer for the allocation-free queries of Autocomplete,
+ * getTopSuggestions(CharSequence, SuggestionBuffer) and
+ * getSuggestions(CharSequence, SuggestionBuffer).
+ *
+ * Besides the results, the buffer owns the scratch space of the search: the
+ * entries of the best-first frontier in parallel arrays, each linked to the
+ * entry of its parent node so its word can be spelled, a binary heap over
+ * them, the k best word weights as a second heap, and the stack of the
+ * depth-first walk. The words are spelled into one shared char array and a
+ * result is only a weight and a range of that array. Everything grows the
+ * first few times it is too small and is then reused, so once a buffer has
+ * served a few queries a query allocates nothing. weight() and appendWord()
+ * read a result without allocating, get() and toList() make Term objects.
+ *
+ * A buffer is not thread-safe, keep one per thread.
+ *
+ * @author Daniel Xu
+ */
+public final class SuggestionBuffer {
+
+    //results: a weight and a range of chars each
+    private final long[] weights;
+    private final int[] starts;
+    private final int[] lengths;
+    private int size;
+
+    //the words of the results and of the word entries of the frontier
+    private char[] chars;
+    private int used;
+    private CharSequence prefix;
+
+    //entries of the best-first search: a node with the entry of its parent,
+    //its letter and depth, or a word (null node) with the entry of its node
+    //and its range of chars
+    private Node[] entryNodes;
+    private int[] entryParents;
+    private byte[] entryLetters;
+    private int[] entryDepths;
+    private int[] entryStarts;
+    private int[] entryLengths;
+    private int entries;
+
+    //frontier of the best-first search, entry ids with their weight
+    private int[] heapEntries;
+    private long[] heapWeights;
+    private int heapSize;
+
+    //min-heap of the best word weights pushed so far
+    private final long[] best;
+    private int bestSize;
+
+    //stack of the depth-first walk, a node with its depth below the prefix
+    //and its letter
+    private Node[] stack;
+    private int[] stackDepths;
+    private byte[] stackLetters;
+
+
+    /*
+     * @param capacity the number of results the buffer holds, which is the
+     *                 k of getTopSuggestions()
+     */
+    public SuggestionBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.weights = new long[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.size = 0;
+        this.chars = new char[256];
+        this.entryNodes = new Node[64];
+        this.entryParents = new int[64];
+        this.entryLetters = new byte[64];
+        this.entryDepths = new int[64];
+        this.entryStarts = new int[64];
+        this.entryLengths = new int[64];
+        this.heapEntries = new int[64];
+        this.heapWeights = new long[64];
+        this.best = new long[capacity];
+        this.stack = new Node[64];
+        this.stackDepths = new int[64];
+        this.stackLetters = new byte[64];
+    }
+
+    /**
+     * @return the largest number of results the buffer holds
+     */
+    public int capacity() {
+        return weights.length;
+    }
+
+    /**
+     * @return the number of results of the last query
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the rank of the result
+     * @return the weight of the result at index
+     * @throws IndexOutOfBoundsException if index is not below size()
+     */
+    public long weight(int index) {
+        check(index);
+        return weights[index];
+    }
+
+    /**
+     * Appends the word of a result, nothing is allocated if into has room
+     *
+     * @param index the rank of the result
+     * @param into receives the word
+     * @throws IndexOutOfBoundsException if index is not below size()
+     */
+    public void appendWord(int index, StringBuilder into) {
+        check(index);
+        into.append(chars, starts[index], lengths[index]);
+    }
+
+    /**
+     * @param index the rank of the result
+     * @return a new Term for the result at index
+     * @throws IndexOutOfBoundsException if index is not below size()
+     */
+    public ITerm get(int index) {
+        check(index);
+        return new Term(new String(chars, starts[index], lengths[index]), weights[index]);
+    }
+
+    /**
+     * @return the results as a new List of new Terms
+     */
+    public List<ITerm> toList() {
+        List<ITerm> list = new ArrayList<ITerm>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(get(i));
+        }
+        return list;
+    }
+
+    /**
+     * Removes the results, and drops the references kept by the scratch space
+     */
+    public void clear() {
+        size = 0;
+        used = 0;
+        prefix = null;
+        Arrays.fill(entryNodes, 0, entries, null);
+        entries = 0;
+        heapSize = 0;
+    }
+
+    private void check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index + " of " + size);
+        }
+    }
+
+    /*
+     * Adds a copy of a result, ignored once the buffer is full
+     */
+    void add(ITerm term) {
+        if (size < weights.length) {
+            String word = term.getTerm();
+            int start = reserve(word.length());
+            word.getChars(0, word.length(), chars, start);
+            addResult(term.getWeight(), start, word.length());
+        }
+    }
+
+    private void addResult(long weight, int start, int length) {
+        weights[size] = weight;
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    /*
+     * @return the start of length free chars, the pool grows if needed
+     */
+    private int reserve(int length) {
+        if (used + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, used + length));
+        }
+        int start = used;
+        used += length;
+        return start;
+    }
+
+    /*
+     * Fills the buffer with the heaviest words of the subtree of node,
+     * heaviest first, the same search as Autocomplete.topHelper()
+     *
+     * @param node the node that has the last letter of the prefix
+     * @param prefix the string of node, read until this returns
+     */
+    void top(Node node, CharSequence prefix) {
+        int k = weights.length;
+        this.prefix = prefix;
+        heapSize = 0;
+        bestSize = 0;
+        push(entry(node, -1, 0), node.getMaxWeight());
+
+        while (heapSize > 0 && size < k) {
+            int next = heapEntries[0];
+            long weight = heapWeights[0];
+            pop();
+
+            Node current = entryNodes[next];
+            if (current == null) {
+                addResult(weight, entryStarts[next], entryLengths[next]);
+                continue;
+            }
+
+            if (current.isWord()) {
+                int word = entry(null, next, 0);
+                spell(next, word);
+                push(word, current.getWeight());
+                addBest(current.getWeight());
+            }
+
+            long floor = bestSize == k ? best[0] : Long.MIN_VALUE;
+            for (int c = current.nextLetter(0); c >= 0; c = current.nextLetter(c + 1)) {
+                Node child = current.getChild(c);
+                if (child.getMaxWeight() >= floor) {
+                    push(entry(child, next, c), child.getMaxWeight());
+                }
+            }
+        }
+        Arrays.fill(entryNodes, 0, entries, null);
+        entries = 0;
+        heapSize = 0;
+        this.prefix = null;
+    }
+
+    /*
+     * Fills the buffer with the first words of the subtree of node in
+     * lexicographic order. Children are visited in letter order, so the walk
+     * needs no sort.
+     *
+     * @param node the node that has the last letter of the prefix
+     * @param prefix the string of node
+     */
+    void all(Node node, CharSequence prefix) {
+        int base = prefix.length();
+        //the word of the node being visited, built in place at the end of
+        //the pool: a node at depth d sets the char at base + d - 1
+        int path = reserve(base);
+        for (int i = 0; i < base; i++) {
+            chars[path + i] = prefix.charAt(i);
+        }
+
+        int depth = 0;
+        stack[depth] = node;
+        stackDepths[depth] = 0;
+        depth++;
+
+        while (depth > 0 && size < weights.length) {
+            depth--;
+            Node current = stack[depth];
+            int level = stackDepths[depth];
+            stack[depth] = null;
+
+            if (level > 0) {
+                chars[path + base + level - 1] = Node.symbol(stackLetters[depth]);
+            }
+            if (current.isWord()) {
+                //the path is moved up past the copy of the word
+                int length = base + level;
+                int start = path;
+                path = reserve(length);
+                System.arraycopy(chars, start, chars, path, length);
+                addResult(current.getWeight(), start, length);
+            }
+
+            //the next level must fit at the end of the pool
+            if (path + base + level + 1 > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, path + base + level + 1));
+            }
+            used = Math.max(used, path + base + level + 1);
+
+            //pushed last letter first, so the first letter is popped first
+            int count = current.childCount();
+            if (depth + count > stack.length) {
+                int length = Math.max(stack.length * 2, depth + count);
+                stack = Arrays.copyOf(stack, length);
+                stackDepths = Arrays.copyOf(stackDepths, length);
+                stackLetters = Arrays.copyOf(stackLetters, length);
+            }
+            int top = depth + count;
+            for (int c = current.nextLetter(0); c >= 0; c = current.nextLetter(c + 1)) {
+                top--;
+                stack[top] = current.getChild(c);
+                stackDepths[top] = level + 1;
+                stackLetters[top] = (byte) c;
+            }
+            depth += count;
+        }
+        Arrays.fill(stack, 0, depth, null);
+    }
+
+    /*
+     * @return the id of a new search entry
+     */
+    private int entry(Node node, int parent, int letter) {
+        if (entries == entryNodes.length) {
+            int length = entries * 2;
+            entryNodes = Arrays.copyOf(entryNodes, length);
+            entryParents = Arrays.copyOf(entryParents, length);
+            entryLetters = Arrays.copyOf(entryLetters, length);
+            entryDepths = Arrays.copyOf(entryDepths, length);
+            entryStarts = Arrays.copyOf(entryStarts, length);
+            entryLengths = Arrays.copyOf(entryLengths, length);
+        }
+        entryNodes[entries] = node;
+        entryParents[entries] = parent;
+        entryLetters[entries] = (byte) letter;
+        entryDepths[entries] = node == null || parent < 0 ? 0 : entryDepths[parent] + 1;
+        return entries++;
+    }
+
+    /*
+     * Spells the word of a node entry, the prefix followed by the letters of
+     * its path, into the chars of a word entry
+     */
+    private void spell(int node, int word) {
+        int depth = 0;
+        for (int e = node; entryParents[e] >= 0; e = entryParents[e]) {
+            depth++;
+        }
+        int length = prefix.length() + depth;
+        int start = reserve(length);
+        for (int i = 0; i < prefix.length(); i++) {
+            chars[start + i] = prefix.charAt(i);
+        }
+        int i = start + length;
+        for (int e = node; entryParents[e] >= 0; e = entryParents[e]) {
+            chars[--i] = Node.symbol(entryLetters[e]);
+        }
+        entryStarts[word] = start;
+        entryLengths[word] = length;
+    }
+
+    /*
+     * Adds an entry to the frontier
+     */
+    private void push(int entry, long weight) {
+        if (heapSize == heapEntries.length) {
+            heapEntries = Arrays.copyOf(heapEntries, heapSize * 2);
+            heapWeights = Arrays.copyOf(heapWeights, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(entry, weight, heapEntries[parent], heapWeights[parent])) {
+                break;
+            }
+            heapEntries[i] = heapEntries[parent];
+            heapWeights[i] = heapWeights[parent];
+            i = parent;
+        }
+        heapEntries[i] = entry;
+        heapWeights[i] = weight;
+    }
+
+    /*
+     * Removes the first entry of the frontier
+     */
+    private void pop() {
+        int last = --heapSize;
+        int entry = heapEntries[last];
+        long weight = heapWeights[last];
+        if (last == 0) {
+            return;
+        }
+
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= last) {
+                break;
+            }
+            if (child + 1 < last && before(heapEntries[child + 1], heapWeights[child + 1],
+                    heapEntries[child], heapWeights[child])) {
+                child++;
+            }
+            if (!before(heapEntries[child], heapWeights[child], entry, weight)) {
+                break;
+            }
+            heapEntries[i] = heapEntries[child];
+            heapWeights[i] = heapWeights[child];
+            i = child;
+        }
+        heapEntries[i] = entry;
+        heapWeights[i] = weight;
+    }
+
+    /*
+     * The order of Autocomplete.Candidate: heavier first, then in the order
+     * of the paths, a node before its own word
+     */
+    private boolean before(int a, long weightA, int b, long weightB) {
+        if (weightA != weightB) {
+            return weightA > weightB;
+        }
+        boolean wordA = entryNodes[a] == null;
+        boolean wordB = entryNodes[b] == null;
+        int order = compare(wordA ? entryParents[a] : a, wordB ? entryParents[b] : b);
+        if (order != 0) {
+            return order < 0;
+        }
+        return !wordA && wordB;
+    }
+
+    /*
+     * Orders the paths of two node entries like LetterPath.compare()
+     */
+    private int compare(int a, int b) {
+        int x = a;
+        int y = b;
+        while (entryDepths[x] > entryDepths[y]) {
+            x = entryParents[x];
+        }
+        while (entryDepths[y] > entryDepths[x]) {
+            y = entryParents[y];
+        }
+        if (x == y) {
+            return entryDepths[a] - entryDepths[b];
+        }
+        while (entryParents[x] != entryParents[y]) {
+            x = entryParents[x];
+            y = entryParents[y];
+        }
+        return Node.symbol(entryLetters[x]) - Node.symbol(entryLetters[y]);
+    }
+
+    /*
+     * Keeps weight if it is among the k best seen so far
+     */
+    private void addBest(long weight) {
+        if (bestSize == best.length) {
+            if (weight <= best[0]) {
+                return;
+            }
+            //replace the smallest and sift it down
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= bestSize) {
+                    break;
+                }
+                if (child + 1 < bestSize && best[child + 1] < best[child]) {
+                    child++;
+                }
+                if (best[child] >= weight) {
+                    break;
+                }
+                best[i] = best[child];
+                i = child;
+            }
+            best[i] = weight;
+            return;
+        }
+
+        int i = bestSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (best[parent] <= weight) {
+                break;
+            }
+            best[i] = best[parent];
+            i = parent;
+        }
+        best[i] = weight;
+    }
+
+}
@@ -0,0 +1,144 @@
+package autocomplete;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * A lazy iterator over the words below a node, heaviest first, made by
+ * Autocomplete.iterateSuggestions().
+ *
+ * The iterator keeps the best-first frontier of getTopSuggestions() and
+ * expands it only as far as the next word needs, so reading the first few
+ * words does not touch the rest of the subtree. Words come out in a strict
+ * order: by descending weight, then in lexicographic order. On equal weight
+ * a subtree is expanded before the words it sorts before, so that the words
+ * of that weight come out in order.
+ *
+ * The strict order is what lets a page resume after the last word of the
+ * previous one, see Autocomplete.getSuggestionPage(). A resumed iterator
+ * starts again from the node of the prefix: it skips the words up to the
+ * resume point without building their Terms, but still expands the
+ * subtrees that hold them, so reaching page n costs about as much as
+ * reading pages 1 to n with one iterator. The trie must not be changed
+ * while an iterator is in use.
+ *
+ * @author Daniel Xu
+ */
+public final class SuggestionIterator implements Iterator<ITerm> {
+
+    private final PriorityQueue<Entry> frontier;
+    private final String prefix;
+    //words up to (afterWeight, afterTerm) in the order are skipped
+    private final long afterWeight;
+    private final String afterTerm;
+    private Term next;
+
+
+    /*
+     * @param node the node that has the last letter of the prefix, or null
+     * @param prefix the string of node, or null when node is null
+     * @param afterWeight the weight of the last word already returned, or
+     *                    Long.MAX_VALUE to start at the first word
+     * @param afterTerm the last word already returned, or null
+     */
+    SuggestionIterator(Node node, CharSequence prefix, long afterWeight, String afterTerm) {
+        this.frontier = new PriorityQueue<Entry>();
+        this.prefix = prefix == null ? "" : prefix.toString();
+        this.afterWeight = afterWeight;
+        this.afterTerm = afterTerm;
+        if (node != null) {
+            frontier.add(new Entry(node, null, null, node.getMaxWeight()));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public ITerm next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Term result = next;
+        next = null;
+        return result;
+    }
+
+    /*
+     * Expands the frontier up to the next word
+     *
+     * @return the next word after the resume point, or null
+     */
+    private Term advance() {
+        while (!frontier.isEmpty()) {
+            Entry entry = frontier.poll();
+
+            if (entry.term != null) {
+                if (after(entry.term)) {
+                    return entry.term;
+                }
+                continue;
+            }
+
+            Node node = entry.node;
+            if (node.isWord() && node.getWeight() <= afterWeight) {
+                Term term = new Term(LetterPath.spell(prefix, entry.path), node.getWeight());
+                frontier.add(new Entry(null, entry.path, term, term.getWeight()));
+            }
+            for (int c = node.nextLetter(0); c >= 0; c = node.nextLetter(c + 1)) {
+                Node child = node.getChild(c);
+                //a subtree lighter than the resume point is still needed
+                frontier.add(new Entry(child, new LetterPath(entry.path, c), null,
+                        child.getMaxWeight()));
+            }
+        }
+        return null;
+    }
+
+    /*
+     * @return whether term comes after the resume point
+     */
+    private boolean after(Term term) {
+        if (term.getWeight() != afterWeight) {
+            return term.getWeight() < afterWeight;
+        }
+        return afterTerm == null || term.getTerm().compareTo(afterTerm) > 0;
+    }
+
+    /*
+     * An entry of the frontier, ordered like Autocomplete.Candidate: by
+     * descending weight, then in the order of the paths
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        private final Node node;
+        private final LetterPath path;
+        private final Term term;
+        private final long weight;
+
+        Entry(Node node, LetterPath path, Term term, long weight) {
+            this.node = node;
+            this.path = path;
+            this.term = term;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(Entry that) {
+            if (this.weight != that.weight) {
+                return this.weight > that.weight ? -1 : 1;
+            }
+            int order = LetterPath.compare(this.path, that.path);
+            if (order != 0) {
+                return order;
+            }
+            //a node before its own word, which only exists once it is expanded
+            return (this.term == null ? 0 : 1) - (that.term == null ? 0 : 1);
+        }
+    }
+}
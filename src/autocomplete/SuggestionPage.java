@@ -0,0 +1,47 @@
+package autocomplete;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of suggestions from Autocomplete.getSuggestionPage(), with the
+ * token that fetches the next page.
+ *
+ * @author Daniel Xu
+ */
+public final class SuggestionPage {
+
+    private final List<ITerm> terms;
+    private final String nextToken;
+
+
+    /*
+     * @param terms the terms of the page, heaviest first
+     * @param nextToken the token of the next page, or null on the last page
+     */
+    SuggestionPage(List<ITerm> terms, String nextToken) {
+        this.terms = Collections.unmodifiableList(terms);
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * @return the terms of the page, heaviest first
+     */
+    public List<ITerm> getTerms() {
+        return terms;
+    }
+
+    /**
+     * @return the opaque token to pass to getSuggestionPage() for the next
+     *         page, or null if this is the last page
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * @return whether there is a page after this one
+     */
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+}
@@ -11,7 +11,7 @@ public class Term implements ITerm {
      * @param the word string
      * @param the weight of the word
      */
-    Term(String term, long weight) {
+    public Term(String term, long weight) {
         if (term == null || weight < 0) {
             throw new IllegalArgumentException();
         }
@@ -0,0 +1,91 @@
+package autocomplete;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A growable list of (word, weight) pairs kept in two parallel arrays, used
+ * to collect the words of one shard before they are inserted in the trie.
+ *
+ * @author Daniel Xu
+ */
+final class TermBuffer {
+
+    private String[] words;
+    private long[] weights;
+    private int size;
+    private long maxWeight;
+
+    TermBuffer() {
+        this.words = new String[16];
+        this.weights = new long[16];
+        this.size = 0;
+        this.maxWeight = 0;
+    }
+
+    /*
+     * Appends a pair, growing the arrays when they are full
+     */
+    void add(String word, long weight) {
+        if (size == words.length) {
+            words = Arrays.copyOf(words, size * 2);
+            weights = Arrays.copyOf(weights, size * 2);
+        }
+        words[size] = word;
+        weights[size] = weight;
+        maxWeight = Math.max(maxWeight, weight);
+        size++;
+    }
+
+    /*
+     * Appends every pair of other, in order
+     */
+    void addAll(TermBuffer other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.words[i], other.weights[i]);
+        }
+    }
+
+    /*
+     * Sorts the pairs by word. The sort is stable, so the pairs of a word
+     * given several times stay in the order they were added.
+     */
+    void sortByWord() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return words[a].compareTo(words[b]);
+            }
+        });
+
+        String[] sortedWords = new String[words.length];
+        long[] sortedWeights = new long[weights.length];
+        for (int i = 0; i < size; i++) {
+            sortedWords[i] = words[order[i]];
+            sortedWeights[i] = weights[order[i]];
+        }
+        words = sortedWords;
+        weights = sortedWeights;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String word(int index) {
+        return words[index];
+    }
+
+    long weight(int index) {
+        return weights[index];
+    }
+
+    /*
+     * @return the largest weight added, 0 when empty
+     */
+    long maxWeight() {
+        return maxWeight;
+    }
+}
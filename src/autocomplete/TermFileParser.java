@@ -0,0 +1,249 @@
+package autocomplete;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Reads an autocomplete file through memory maps, parsing line-aligned
+ * chunks of it in parallel.
+ *
+ * Weights and words are parsed straight from the mapped bytes: the only
+ * object made per line is the String of the word itself. A line is a weight,
+ * then tabs or spaces, then the word, so both the "weight\tword" lines read
+ * by buildTrie() and the "0 word" lines written by
+ * IndexBuilder.createAutocompleteFile() are accepted. As in buildTrie(), the
+ * word ends at the next tab and any further fields of the line are ignored.
+ * Words are lower cased; lines without a word (such as the count on the
+ * first line of createAutocompleteFile()), with an invalid weight, or with a
+ * word addWord() would reject are skipped.
+ *
+ * @author Daniel Xu
+ */
+final class TermFileParser {
+
+    //chunks per thread, so a slow chunk does not hold the others back
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+    //the part of the file read() maps at a time
+    private static final long SEQUENTIAL_CHUNK_BYTES = 1 << 26;
+
+    private TermFileParser() {
+    }
+
+    /*
+     * Parses the whole file
+     *
+     * @param file the autocomplete file
+     * @param parallelism the number of threads parsing chunks
+     * @return the words of the file split by first letter, in file order
+     * @throws IOException if the file cannot be read
+     */
+    static TermBuffer[] parse(Path file, int parallelism) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunk = Math.max(MIN_CHUNK_BYTES,
+                    size / ((long) parallelism * CHUNKS_PER_THREAD) + 1);
+
+            final List<Chunk> chunks = new ArrayList<Chunk>();
+            for (long start = 0; start < size; start += chunk) {
+                chunks.add(new Chunk(channel, start, Math.min(size, start + chunk), size, null));
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        ForkJoinTask.invokeAll(chunks);
+                    }
+                });
+            } finally {
+                pool.shutdown();
+            }
+
+            TermBuffer[] shards = new TermBuffer[26];
+            for (int i = 0; i < 26; i++) {
+                shards[i] = new TermBuffer();
+            }
+            for (Chunk done : chunks) {
+                if (done.failure != null) {
+                    throw done.failure;
+                }
+                for (int i = 0; i < 26; i++) {
+                    shards[i].addAll(done.shards[i]);
+                }
+            }
+            return shards;
+        }
+    }
+
+    /*
+     * Parses the whole file on the calling thread, for a caller that needs
+     * the words in the order of the file
+     *
+     * @param file the autocomplete file
+     * @param consumer called with every word and its weight, in file order
+     * @throws IOException if the file cannot be read
+     */
+    static void read(Path file, ObjLongConsumer<String> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long start = 0; start < size; start += SEQUENTIAL_CHUNK_BYTES) {
+                Chunk chunk = new Chunk(channel, start,
+                        Math.min(size, start + SEQUENTIAL_CHUNK_BYTES), size, consumer);
+                chunk.invoke();
+                if (chunk.failure != null) {
+                    throw chunk.failure;
+                }
+            }
+        }
+    }
+
+    /*
+     * Parses the lines starting in [start, end) of the file. The last of them
+     * may run past end. The words go to sink if there is one, else to the
+     * shards of the chunk.
+     */
+    private static class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient FileChannel channel;
+        private final long start;
+        private final long end;
+        private final long size;
+        private final TermBuffer[] shards;
+        private final transient ObjLongConsumer<String> sink;
+        private IOException failure;
+
+        Chunk(FileChannel channel, long start, long end, long size,
+                ObjLongConsumer<String> sink) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.size = size;
+            this.sink = sink;
+            this.shards = new TermBuffer[26];
+            for (int i = 0; i < 26 && sink == null; i++) {
+                shards[i] = new TermBuffer();
+            }
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                //map from the byte before start, to tell whether a line starts at start
+                long from = Math.max(0, start - 1);
+                long length = Math.min(size - from, Integer.MAX_VALUE);
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+                parseLines(bytes, (int) (start - from), (int) (end - from));
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        /*
+         * @param bytes the mapped part of the file
+         * @param first the position of start in bytes
+         * @param last the position of end in bytes
+         */
+        private void parseLines(MappedByteBuffer bytes, int first, int last) {
+            int limit = bytes.limit();
+            int pos = first;
+
+            //the line under way at start belongs to the previous chunk
+            if (pos > 0 && bytes.get(pos - 1) != '\n') {
+                while (pos < limit && bytes.get(pos) != '\n') {
+                    pos++;
+                }
+                pos++;
+            }
+
+            byte[] word = new byte[64];
+            while (pos < last && pos < limit) {
+                pos = skipBlanks(bytes, pos, limit);
+
+                //weight
+                long weight = 0;
+                int digits = 0;
+                while (pos < limit && isDigit(bytes.get(pos))) {
+                    if (weight > (Long.MAX_VALUE - 9) / 10) {
+                        digits = -1;
+                        break;
+                    }
+                    weight = weight * 10 + (bytes.get(pos) - '0');
+                    digits++;
+                    pos++;
+                }
+
+                //at least one tab or space before the word
+                boolean separated = pos < limit && isBlank(bytes.get(pos));
+                pos = skipBlanks(bytes, pos, limit);
+
+                //word, lower cased, up to the next tab or the end of the line
+                int length = 0;
+                boolean valid = true;
+                while (pos < limit && bytes.get(pos) != '\n' && bytes.get(pos) != '\t') {
+                    byte b = bytes.get(pos++);
+                    if (b >= 'A' && b <= 'Z') {
+                        b += 'a' - 'A';
+                    }
+                    if (length == word.length) {
+                        byte[] grown = new byte[length * 2];
+                        System.arraycopy(word, 0, grown, 0, length);
+                        word = grown;
+                    }
+                    word[length++] = b;
+                }
+                //further fields, which the split("\t") of buildTrie() ignores
+                while (pos < limit && bytes.get(pos) != '\n') {
+                    pos++;
+                }
+                pos++;
+
+                //trailing blanks, as in trim()
+                while (length > 0 && isBlank(word[length - 1])) {
+                    length--;
+                }
+                for (int i = 0; i < length && valid; i++) {
+                    valid = word[i] >= 'a' && word[i] <= 'z';
+                }
+
+                if (digits > 0 && separated && length > 0 && valid) {
+                    String query = new String(word, 0, length, StandardCharsets.ISO_8859_1);
+                    if (sink != null) {
+                        sink.accept(query, weight);
+                    } else {
+                        shards[word[0] - 'a'].add(query, weight);
+                    }
+                }
+            }
+        }
+
+        private static int skipBlanks(MappedByteBuffer bytes, int pos, int limit) {
+            while (pos < limit && isBlank(bytes.get(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+
+        private static boolean isBlank(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package autocomplete;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A trie with a write path in front of a large read-optimized base, in the
+ * manner of a log-structured merge tree.
+ *
+ * ==== Tiers ====
+ * - active: a small ConcurrentAutocomplete that takes every addWord()
+ * - flushing: the previous active delta, read-only while it is compacted
+ * - base: a FrozenAutocomplete holding everything compacted so far
+ * The three are held in one immutable State, swapped atomically, so a query
+ * always sees a consistent set of tiers.
+ *
+ * addWord() only copies one path of the active delta, however large the
+ * base is. Once the delta holds threshold words it becomes the flushing
+ * tier, a new empty delta takes the writes, and a background thread merges
+ * the flushing tier into a new base: the words of both are merged in
+ * lexicographic order, bulk loaded with a SortedTrieLoader and frozen.
+ *
+ * ==== Merged reads ====
+ * A word added again replaces its weight and is counted again, as in
+ * Autocomplete, so the newest tier holding a word has its weight and
+ * countPrefixes() is the sum over the tiers. getTopSuggestions() asks each
+ * tier for its top k, dropping the words a newer tier shadows, and asks an
+ * older tier for more when too many were dropped.
+ *
+ * ==== Failures ====
+ * A merge that fails leaves the flushing tier in place, still readable. It
+ * is merged again by the next addWord() that fills the active delta, or by
+ * flush(), which throws if the merge fails again. close() stops the
+ * compaction thread.
+ *
+ * @author Daniel Xu
+ */
+public class TieredAutocomplete implements IAutocomplete, AutoCloseable {
+
+    private final AtomicReference<State> state;
+    private final int threshold;
+    private final ExecutorService compactor;
+    //taken to swap the tiers
+    private final Object writeLock;
+    //taken by whoever replaces the base
+    private final Object compactLock;
+    private volatile int numSuggest;
+    private volatile Future<?> compaction;
+    private volatile boolean closed;
+
+
+    /*
+     * This makes an empty trie
+     *
+     * @param threshold the number of words in the delta that starts a
+     *                  compaction
+     */
+    public TieredAutocomplete(int threshold) {
+        this(new Autocomplete().freeze(), threshold);
+    }
+
+    /*
+     * This makes a trie over an existing base
+     *
+     * @param base the words already compacted
+     * @param threshold the number of words in the delta that starts a
+     *                  compaction
+     */
+    public TieredAutocomplete(FrozenAutocomplete base, int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive: " + threshold);
+        }
+        this.state = new AtomicReference<State>(
+                new State(base, new ConcurrentAutocomplete(), null));
+        this.threshold = threshold;
+        this.writeLock = new Object();
+        this.compactLock = new Object();
+        this.numSuggest = base.numberSuggestions();
+        this.compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "autocomplete-compaction");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds a new word with its associated weight to the active delta, and
+     * starts a compaction once the delta is full, or retries the last one if
+     * it failed. After close() the delta takes the words without compacting.
+     *
+     * @param word the word to be added to the Trie
+     * @param weight the weight of the word
+     */
+    @Override
+    public void addWord(String word, long weight) {
+        if (!Autocomplete.isWord(word)) {
+            return;
+        }
+        synchronized (writeLock) {
+            State current = state.get();
+            current.active.addWord(word, weight);
+            if (closed || current.active.countPrefixes("") < threshold) {
+                return;
+            }
+            if (current.flushing == null) {
+                startCompaction(current);
+            } else if (compaction.isDone()) {
+                //the last merge failed, a successful one clears flushing first
+                submitMerge(current.flushing);
+            }
+        }
+    }
+
+    /**
+     * Reads the file the same way as Autocomplete.buildTrie() and merges its
+     * words straight into the base
+     *
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @return the root of a plain Autocomplete holding the words of the file
+     */
+    @Override
+    public Node buildTrie(String filename, int k) {
+        this.numSuggest = k;
+        ConcurrentAutocomplete file = new ConcurrentAutocomplete();
+        Node root = file.buildTrie(filename, k);
+
+        synchronized (compactLock) {
+            FrozenAutocomplete base = merge(state.get().base, file);
+            synchronized (writeLock) {
+                State current = state.get();
+                state.set(new State(base, current.active, current.flushing));
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Compacts the active delta into the base and waits for it, along with
+     * any compaction already running. A compaction that failed is retried.
+     *
+     * @throws IllegalStateException if the merge fails, with its cause, or
+     *         if the trie is closed
+     */
+    public void flush() {
+        Future<?> running;
+        synchronized (writeLock) {
+            running = compaction;
+        }
+        try {
+            await(running);
+        } catch (IllegalStateException e) {
+            //the flushing tier is still there, it is merged again below
+        }
+
+        synchronized (writeLock) {
+            if (closed) {
+                throw new IllegalStateException("closed");
+            }
+            State current = state.get();
+            if (current.flushing != null) {
+                submitMerge(current.flushing);
+            } else if (current.active.countPrefixes("") > 0) {
+                startCompaction(current);
+            }
+            running = compaction;
+        }
+        await(running);
+    }
+
+    /*
+     * Moves the active delta to the flushing tier and merges it in the
+     * background. Called with the write lock held.
+     */
+    private void startCompaction(State current) {
+        ConcurrentAutocomplete flushing = current.active;
+        state.set(new State(current.base, new ConcurrentAutocomplete(), flushing));
+        submitMerge(flushing);
+    }
+
+    /*
+     * Merges the flushing tier into the base in the background. Called with
+     * the write lock held.
+     */
+    private void submitMerge(final ConcurrentAutocomplete flushing) {
+        //a failure is kept by the Future, the flushing tier stays readable
+        compaction = compactor.submit(new Runnable() {
+            public void run() {
+                synchronized (compactLock) {
+                    FrozenAutocomplete base = merge(state.get().base, flushing);
+                    synchronized (writeLock) {
+                        state.set(new State(base, state.get().active, null));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the compaction thread once the running compaction is done. The
+     * tiers stay readable and addWord() still takes words, into the active
+     * delta only; flush() throws.
+     */
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            closed = true;
+            compactor.shutdown();
+        }
+    }
+
+    private static void await(Future<?> running) {
+        if (running == null) {
+            return;
+        }
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("the compaction failed", e.getCause());
+        }
+    }
+
+    /*
+     * Merges the words of delta into base. On the same word the delta comes
+     * last, so its weight wins.
+     *
+     * @return the new base
+     */
+    private FrozenAutocomplete merge(FrozenAutocomplete base, ConcurrentAutocomplete delta) {
+        TermBuffer older = new TermBuffer();
+        TermBuffer newer = new TermBuffer();
+        base.collectWords(older);
+        delta.collectWords(newer);
+
+        Autocomplete target = new Autocomplete(new Node(), numSuggest);
+        SortedTrieLoader loader = new SortedTrieLoader(target, true);
+        int i = 0;
+        int j = 0;
+        while (i < older.size() || j < newer.size()) {
+            if (j == newer.size() || i < older.size()
+                    && older.word(i).compareTo(newer.word(j)) <= 0) {
+                loader.add(older.word(i), older.weight(i));
+                i++;
+            } else {
+                loader.add(newer.word(j), newer.weight(j));
+                j++;
+            }
+        }
+        loader.finish();
+        return target.freeze();
+    }
+
+    /**
+     * @return k the the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return this.numSuggest;
+    }
+
+    /**
+     * @param prefix
+     * @return a detached Node with the merged term and counts of prefix, or
+     *         null if no tier has it. Its child array is left empty.
+     */
+    @Override
+    public Node getSubTrie(String prefix) {
+        State current = state.get();
+        int count = 0;
+        long maxWeight = 0;
+        boolean found = false;
+        long weight = -1;
+        int words = 0;
+
+        for (IAutocomplete tier : current.tiers()) {
+            Node node = tier.getSubTrie(prefix);
+            if (node == null) {
+                continue;
+            }
+            found = true;
+            count += node.getPrefixes();
+            maxWeight = Math.max(maxWeight, node.getMaxWeight());
+            words += node.getWords();
+            if (weight < 0 && node.getWords() > 0) {
+                weight = node.getWeight();
+            }
+        }
+        if (!found) {
+            return null;
+        }
+
+        Node result = weight < 0 ? new Node() : new Node(prefix, weight);
+        result.setPrefixes(count);
+        result.setWords(words);
+        result.setMaxWeight(maxWeight);
+        return result;
+    }
+
+    /**
+     * @param prefix
+     * @return the number of words that start with prefix, summed over the tiers
+     */
+    @Override
+    public int countPrefixes(String prefix) {
+        int count = 0;
+        for (IAutocomplete tier : state.get().tiers()) {
+            count += tier.countPrefixes(prefix);
+        }
+        return count;
+    }
+
+    /**
+     * @param prefix
+     * @return a List containing all the ITerm objects with query starting with
+     *         prefix, in lexicographic order, each word with the weight of the
+     *         newest tier holding it
+     */
+    @Override
+    public List<ITerm> getSuggestions(String prefix) {
+        TreeMap<String, ITerm> merged = new TreeMap<String, ITerm>();
+        List<IAutocomplete> tiers = state.get().tiers();
+        //oldest first, so newer tiers overwrite
+        for (int i = tiers.size() - 1; i >= 0; i--) {
+            for (ITerm term : tiers.get(i).getSuggestions(prefix)) {
+                merged.put(term.getTerm(), term);
+            }
+        }
+        return new ArrayList<ITerm>(merged.values());
+    }
+
+    /**
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return a List of at most k ITerm objects starting with prefix, sorted by
+     *         descending weight, each word with the weight of the newest tier
+     *         holding it
+     */
+    @Override
+    public List<ITerm> getTopSuggestions(String prefix, int k) {
+        List<ITerm> container = new ArrayList<ITerm>();
+        if (prefix == null || k <= 0) {
+            return container;
+        }
+
+        State current = state.get();
+        List<IAutocomplete> tiers = current.tiers();
+        for (int i = 0; i < tiers.size(); i++) {
+            topFromTier(tiers, i, prefix, k, container);
+        }
+
+        Collections.sort(container, Autocomplete.BY_WEIGHT_THEN_TERM);
+        return container.size() > k ? new ArrayList<ITerm>(container.subList(0, k)) : container;
+    }
+
+    /*
+     * This method is a helper function for getTopSuggestions(). It adds the k
+     * heaviest words of tiers[index] that no newer tier holds.
+     */
+    private static void topFromTier(List<IAutocomplete> tiers, int index,
+            String prefix, int k, List<ITerm> container) {
+        int wanted = k;
+        while (true) {
+            List<ITerm> top = tiers.get(index).getTopSuggestions(prefix, wanted);
+            List<ITerm> kept = new ArrayList<ITerm>();
+            for (ITerm term : top) {
+                if (!shadowed(tiers, index, term.getTerm())) {
+                    kept.add(term);
+                    if (kept.size() == k) {
+                        break;
+                    }
+                }
+            }
+            //the tier had no more words, or enough were left
+            if (top.size() < wanted || kept.size() == k) {
+                container.addAll(kept);
+                return;
+            }
+            wanted *= 2;
+        }
+    }
+
+    /*
+     * @return whether a tier newer than tiers[index] holds word
+     */
+    private static boolean shadowed(List<IAutocomplete> tiers, int index, String word) {
+        for (int i = 0; i < index; i++) {
+            if (((ConcurrentAutocomplete) tiers.get(i)).contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of words in the active and flushing deltas
+     */
+    public int deltaSize() {
+        State current = state.get();
+        int count = current.active.countPrefixes("");
+        if (current.flushing != null) {
+            count += current.flushing.countPrefixes("");
+        }
+        return count;
+    }
+
+    /**
+     * @return the base holding every word compacted so far
+     */
+    public FrozenAutocomplete getBase() {
+        return state.get().base;
+    }
+
+    /*
+     * The tiers at one point in time, never changed once made
+     */
+    private static final class State {
+
+        private final FrozenAutocomplete base;
+        private final ConcurrentAutocomplete active;
+        private final ConcurrentAutocomplete flushing;
+
+        State(FrozenAutocomplete base, ConcurrentAutocomplete active,
+                ConcurrentAutocomplete flushing) {
+            this.base = base;
+            this.active = active;
+            this.flushing = flushing;
+        }
+
+        /*
+         * @return the tiers, newest first, the base last
+         */
+        List<IAutocomplete> tiers() {
+            List<IAutocomplete> tiers = new ArrayList<IAutocomplete>(3);
+            tiers.add(active);
+            if (flushing != null) {
+                tiers.add(flushing);
+            }
+            tiers.add(base);
+            return tiers;
+        }
+    }
+
+}
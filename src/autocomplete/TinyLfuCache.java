@@ -0,0 +1,285 @@
+package autocomplete;
+import java.util.HashMap;
+
+/**
+ * A size-bounded cache with W-TinyLFU eviction, used by CachingAutocomplete.
+ *
+ * ==== Segments ====
+ * - window: a small LRU (1% of the capacity) every new entry goes into
+ * - probation: entries admitted from the window, not read again yet
+ * - protected: entries read again while in probation (80% of the rest)
+ * An entry pushed out of the window is only admitted to the main segments
+ * if a FrequencySketch estimates it is looked up more often than the
+ * probation entries it would push out; otherwise it is dropped. A burst of
+ * one-off prefixes therefore cannot flush the popular ones.
+ *
+ * Entries have a weight and the capacity bounds the sum of the weights, so
+ * the bound can be put on the size of the values rather than their count.
+ * Not thread-safe, the caller locks.
+ *
+ * @author Daniel Xu
+ */
+final class TinyLfuCache<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final HashMap<K, Entry<K, V>> map;
+    private final Segment<K, V> window;
+    private final Segment<K, V> probation;
+    private final Segment<K, V> protect;
+    private final FrequencySketch sketch;
+    private final long maxWeight;
+    private final long windowMax;
+    private final long protectedMax;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+
+    /*
+     * @param maxWeight the largest total weight of the entries
+     */
+    TinyLfuCache(long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        this.map = new HashMap<K, Entry<K, V>>();
+        this.window = new Segment<K, V>(WINDOW);
+        this.probation = new Segment<K, V>(PROBATION);
+        this.protect = new Segment<K, V>(PROTECTED);
+        this.sketch = new FrequencySketch((int) Math.min(maxWeight, Integer.MAX_VALUE));
+        this.maxWeight = maxWeight;
+        this.windowMax = Math.max(1, maxWeight / 100);
+        this.protectedMax = (maxWeight - windowMax) * 80 / 100;
+    }
+
+    /*
+     * @return the value of key, or null on a miss
+     */
+    V get(K key) {
+        sketch.increment(key);
+        Entry<K, V> entry = map.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        onAccess(entry);
+        return entry.value;
+    }
+
+    /*
+     * Adds or replaces the value of key. A value heavier than the whole
+     * cache is not kept, and replacing a value with such a value removes
+     * the key.
+     */
+    void put(K key, V value, int weight) {
+        Entry<K, V> entry = map.get(key);
+        if (entry != null) {
+            if (weight > maxWeight) {
+                remove(key);
+                return;
+            }
+            segment(entry).weight += weight - entry.weight;
+            entry.value = value;
+            entry.weight = weight;
+            onAccess(entry);
+        } else {
+            if (weight > maxWeight) {
+                return;
+            }
+            entry = new Entry<K, V>(key, value, weight);
+            map.put(key, entry);
+            window.addFirst(entry);
+        }
+        evict();
+    }
+
+    /*
+     * Removes key
+     *
+     * @return whether key was cached
+     */
+    boolean remove(K key) {
+        Entry<K, V> entry = map.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        segment(entry).remove(entry);
+        return true;
+    }
+
+    /*
+     * Removes every entry, the counters and the sketch are kept
+     */
+    void clear() {
+        map.clear();
+        window.clear();
+        probation.clear();
+        protect.clear();
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    long weight() {
+        return window.weight + probation.weight + protect.weight;
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    long evictions() {
+        return evictions;
+    }
+
+    /*
+     * Moves an entry that was read to the front of its segment, promoting it
+     * from probation to protected
+     */
+    private void onAccess(Entry<K, V> entry) {
+        Segment<K, V> segment = segment(entry);
+        segment.remove(entry);
+        if (segment == probation) {
+            protect.addFirst(entry);
+        } else {
+            segment.addFirst(entry);
+        }
+        //protected overflow goes back to probation
+        while (protect.weight > protectedMax && protect.last() != entry) {
+            Entry<K, V> demoted = protect.last();
+            protect.remove(demoted);
+            probation.addFirst(demoted);
+        }
+    }
+
+    /*
+     * Moves the window overflow to the main segments, each entry only if it
+     * wins against the probation entries it would push out, then drops the
+     * least recently used entries of the main segments while they are over
+     * their share, which only happens when put() made a value heavier
+     */
+    private void evict() {
+        while (window.weight > windowMax && window.last() != null) {
+            Entry<K, V> candidate = window.last();
+            window.remove(candidate);
+            long mainMax = maxWeight - windowMax;
+            int frequency = sketch.frequency(candidate.key);
+
+            boolean admitted = true;
+            while (probation.weight + protect.weight + candidate.weight > mainMax) {
+                Entry<K, V> victim = probation.last() != null ? probation.last() : protect.last();
+                if (victim == null || sketch.frequency(victim.key) >= frequency) {
+                    admitted = false;
+                    break;
+                }
+                drop(victim);
+            }
+
+            if (admitted) {
+                probation.addFirst(candidate);
+            } else {
+                map.remove(candidate.key);
+                evictions++;
+            }
+        }
+
+        long mainMax = maxWeight - windowMax;
+        while (probation.weight + protect.weight > mainMax) {
+            drop(probation.last() != null ? probation.last() : protect.last());
+        }
+    }
+
+    private void drop(Entry<K, V> entry) {
+        segment(entry).remove(entry);
+        map.remove(entry.key);
+        evictions++;
+    }
+
+    private Segment<K, V> segment(Entry<K, V> entry) {
+        switch (entry.segment) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protect;
+        }
+    }
+
+    /*
+     * A cached value, linked into the list of its segment
+     */
+    private static final class Entry<K, V> {
+
+        private final K key;
+        private V value;
+        private int weight;
+        private int segment;
+        private Entry<K, V> previous;
+        private Entry<K, V> next;
+
+        Entry(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /*
+     * An LRU list, most recent first, with the total weight of its entries
+     */
+    private static final class Segment<K, V> {
+
+        private final int id;
+        private final Entry<K, V> head;
+        private long weight;
+
+        Segment(int id) {
+            this.id = id;
+            this.head = new Entry<K, V>(null, null, 0);
+            this.head.previous = head;
+            this.head.next = head;
+            this.weight = 0;
+        }
+
+        void addFirst(Entry<K, V> entry) {
+            entry.segment = id;
+            entry.previous = head;
+            entry.next = head.next;
+            head.next.previous = entry;
+            head.next = entry;
+            weight += entry.weight;
+        }
+
+        void remove(Entry<K, V> entry) {
+            entry.previous.next = entry.next;
+            entry.next.previous = entry.previous;
+            entry.previous = null;
+            entry.next = null;
+            weight -= entry.weight;
+        }
+
+        /*
+         * @return the least recently used entry, or null
+         */
+        Entry<K, V> last() {
+            return head.previous == head ? null : head.previous;
+        }
+
+        void clear() {
+            head.previous = head;
+            head.next = head;
+            weight = 0;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package autocomplete;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The binary snapshot format written by FrozenAutocomplete.writeSnapshot()
+ * and mapped by MappedAutocomplete.open(). All values are little-endian.
+ *
+ * ==== Header (32 bytes) ====
+ * - int magic, "ACTR"
+ * - int version, bumped whenever the layout below changes
+ * - int number of nodes n
+ * - int number of suggestions given to buildTrie()
+ * - long length of the body in bytes
+ * - long CRC32 of the body
+ *
+ * ==== Body ====
+ * The ArrayTrie arrays one after the other, each section starting on a
+ * multiple of 8 bytes: labels (n bytes), ends, parents, prefixes (n ints
+ * each), weights, maxWeights (n longs each).
+ *
+ * @author Daniel Xu
+ */
+final class TrieSnapshot {
+
+    static final int MAGIC = 0x52544341;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private TrieSnapshot() {
+    }
+
+    /*
+     * @param size the number of nodes
+     * @return the offset of each section from the start of the body, and the
+     *         length of the body as the last element
+     */
+    static long[] sections(int size) {
+        long[] offsets = new long[7];
+        offsets[0] = 0;
+        offsets[1] = pad(size);
+        offsets[2] = offsets[1] + 4L * size;
+        offsets[3] = offsets[2] + 4L * size;
+        offsets[4] = pad(offsets[3] + 4L * size);
+        offsets[5] = offsets[4] + 8L * size;
+        offsets[6] = offsets[5] + 8L * size;
+        return offsets;
+    }
+
+    /*
+     * Writes the arrays to a temporary file next to file and renames it over
+     * file once complete, so a reader never maps a half-written snapshot
+     */
+    static void write(Path file, byte[] labels, int[] ends, int[] parents,
+            int[] prefixes, long[] weights, long[] maxWeights, int numSuggest)
+                    throws IOException {
+        int size = labels.length;
+        long[] offsets = sections(size);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(HEADER_BYTES);
+            Writer body = new Writer(channel);
+
+            body.put(labels);
+            body.padTo(offsets[1]);
+            body.put(ends);
+            body.put(parents);
+            body.put(prefixes);
+            body.padTo(offsets[4]);
+            body.put(weights);
+            body.put(maxWeights);
+            body.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(numSuggest);
+            header.putLong(offsets[6]).putLong(body.crc.getValue());
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, HEADER_BYTES - header.remaining());
+            }
+            channel.force(true);
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long pad(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /*
+     * Buffers the body, keeping the CRC32 and the number of bytes written
+     */
+    private static class Writer {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final CRC32 crc;
+        private long written;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            this.crc = new CRC32();
+            this.written = 0;
+        }
+
+        void put(byte[] values) throws IOException {
+            for (byte value : values) {
+                ensure(1);
+                buffer.put(value);
+            }
+        }
+
+        void put(int[] values) throws IOException {
+            for (int value : values) {
+                ensure(4);
+                buffer.putInt(value);
+            }
+        }
+
+        void put(long[] values) throws IOException {
+            for (long value : values) {
+                ensure(8);
+                buffer.putLong(value);
+            }
+        }
+
+        void padTo(long offset) throws IOException {
+            while (written + buffer.position() < offset) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            written += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
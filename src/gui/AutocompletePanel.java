@@ -10,8 +10,6 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -41,6 +39,9 @@ private final JTextField  searchText;                            // the
 private Autocomplete              auto;                                  // the
                                                                  // Autocomplete
                                                                  // object
+private AutocompleteCursor cursor;                             // the
+                                                                 // text typed
+                                                                 // so far
 private String[]          results          = new String[10];      // an
                                                                  // array
                                                                  // of
@@ -116,6 +117,7 @@ public AutocompletePanel(String filename)
 
     auto = new Autocomplete();
     auto.buildTrie(filename, 6);
+    cursor = auto.openCursor();
 
 
     GroupLayout layout = new GroupLayout(this);
@@ -498,13 +500,10 @@ public void getSuggestions(String text)
         text = text.trim();
 
         int textLen = text.length();
-        // clear the previous match
-        List<ITerm>matches = new ArrayList<ITerm>();
-        matches = auto.getSuggestions(text);
-        
-
-         Collections
-         .sort(matches, ITerm.byReverseWeightOrder());
+        // only the 10 heaviest matches are shown; the cursor only
+        // walks the characters that changed since the last call
+        cursor.moveTo(text);
+        List<ITerm> matches = cursor.top(10);
 
 
          Term[] allResults = matches.toArray(new Term[matches.size()]);
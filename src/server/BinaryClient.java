@@ -0,0 +1,274 @@
+package server;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import autocomplete.Autocomplete;
+import autocomplete.ITerm;
+
+/**
+ * A client of BinaryServer that pipelines its requests over one connection.
+ *
+ * Every query returns a CompletableFuture at once, after writing the
+ * request; it does not wait for the answer of the previous query, so any
+ * number of queries can be on the wire together and the round trip is paid
+ * once per batch rather than once per query. A reader thread decodes the
+ * responses as they arrive and completes the future of the request with the
+ * same id. Any number of threads can share a client.
+ *
+ * A future of a request the server could not answer completes with an
+ * IllegalStateException, the futures still waiting when the connection
+ * closes complete with an IOException.
+ *
+ * @author Daniel Xu
+ */
+public class BinaryClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final ByteBuffer out;
+    private final ConcurrentHashMap<Integer, Call<?>> pending;
+    private final AtomicInteger nextId;
+    private final Thread reader;
+    private volatile IOException closed;
+
+
+    /*
+     * This connects to a server
+     *
+     * @param address the address of a BinaryServer
+     * @throws IOException if the connection fails
+     */
+    public BinaryClient(InetSocketAddress address) throws IOException {
+        this.channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true);
+        this.out = ByteBuffer.allocate(4 + BinaryProtocol.MAX_REQUEST);
+        this.pending = new ConcurrentHashMap<Integer, Call<?>>();
+        this.nextId = new AtomicInteger();
+        this.reader = new Thread(new Runnable() {
+            public void run() {
+                receive();
+            }
+        }, "binary-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * @param prefix
+     * @param k the maximum number of terms to return
+     * @return the answer of IAutocomplete.getTopSuggestions() on the server
+     */
+    public CompletableFuture<List<ITerm>> getTopSuggestions(String prefix, int k) {
+        return send(BinaryProtocol.OP_TOP, k, prefix, new Call<List<ITerm>>() {
+            List<ITerm> decode(ByteBuffer payload) {
+                return BinaryProtocol.readTerms(payload);
+            }
+        });
+    }
+
+    /**
+     * @param prefix
+     * @return the answer of IAutocomplete.getSuggestions() on the server
+     */
+    public CompletableFuture<List<ITerm>> getSuggestions(String prefix) {
+        return send(BinaryProtocol.OP_ALL, 0, prefix, new Call<List<ITerm>>() {
+            List<ITerm> decode(ByteBuffer payload) {
+                return BinaryProtocol.readTerms(payload);
+            }
+        });
+    }
+
+    /**
+     * @param prefix
+     * @return the answer of IAutocomplete.countPrefixes() on the server
+     */
+    public CompletableFuture<Integer> countPrefixes(String prefix) {
+        return send(BinaryProtocol.OP_COUNT, 0, prefix, new Call<Integer>() {
+            Integer decode(ByteBuffer payload) {
+                return payload.getInt();
+            }
+        });
+    }
+
+    /**
+     * Closes the connection. The futures still waiting complete with an
+     * IOException.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> send(byte op, int k, String prefix, Call<T> call) {
+        byte[] bytes = (prefix == null ? "" : prefix).getBytes(StandardCharsets.UTF_8);
+        if (BinaryProtocol.REQUEST_HEADER + bytes.length > BinaryProtocol.MAX_REQUEST) {
+            call.completeExceptionally(new IllegalArgumentException("prefix too long"));
+            return call;
+        }
+
+        int id = nextId.getAndIncrement();
+        pending.put(id, call);
+        try {
+            synchronized (out) {
+                out.clear();
+                BinaryProtocol.writeRequest(out, id, op, k, bytes);
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(id);
+            call.completeExceptionally(e);
+        }
+        //the reader may have failed the pending calls before this one was put
+        if (closed != null && pending.remove(id) != null) {
+            call.completeExceptionally(closed);
+        }
+        return call;
+    }
+
+    /*
+     * The reader loop, until the connection closes
+     */
+    private void receive() {
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                while (in.remaining() >= 4) {
+                    int length = in.getInt(in.position());
+                    if (length < BinaryProtocol.RESPONSE_HEADER) {
+                        throw new IOException("malformed response of length " + length);
+                    }
+                    if (in.remaining() < 4 + length) {
+                        break;
+                    }
+                    in.getInt();
+                    int end = in.position() + length;
+                    ByteBuffer frame = in.duplicate();
+                    frame.limit(end);
+                    in.position(end);
+                    complete(frame);
+                }
+                in.compact();
+                if (in.position() >= 4 && in.getInt(0) + 4 > in.capacity()) {
+                    //a frame larger than the buffer, such as getSuggestions("")
+                    ByteBuffer larger = ByteBuffer.allocate(in.getInt(0) + 4);
+                    in.flip();
+                    larger.put(in);
+                    in = larger;
+                }
+            }
+            fail(new IOException("the server closed the connection"));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete(ByteBuffer frame) {
+        int id = frame.getInt();
+        byte status = frame.get();
+        Call<Object> call = (Call<Object>) pending.remove(id);
+        if (call == null) {
+            return;
+        }
+        if (status == BinaryProtocol.STATUS_OK) {
+            call.complete(call.decode(frame));
+        } else {
+            call.completeExceptionally(new IllegalStateException(BinaryProtocol.readString(frame)));
+        }
+    }
+
+    private void fail(IOException cause) {
+        closed = cause;
+        for (Integer id : pending.keySet()) {
+            Call<?> call = pending.remove(id);
+            if (call != null) {
+                call.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /*
+     * The future of one request, which knows how to read its response
+     */
+    private abstract static class Call<T> extends CompletableFuture<T> {
+
+        abstract T decode(ByteBuffer payload);
+    }
+
+    /**
+     * Throughput test: builds an Autocomplete from a file, serves it on the
+     * loopback address and sends pipelined getTopSuggestions() requests of
+     * two-letter prefixes over one connection, with at most window of them
+     * unanswered at a time. The file is read with buildTrieMapped(), so it
+     * can be in either format.
+     *
+     * @param args the autocomplete file, then the number of requests
+     *             (200000 by default), the window (256 by default) and the
+     *             number of server workers (processors by default)
+     * @throws IOException if the server cannot start
+     */
+    public static void main(String[] args) throws IOException {
+        String filename = args.length > 0 ? args[0] : "Autocomplete.txt";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int window = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+
+        Autocomplete trie = new Autocomplete();
+        trie.buildTrieMapped(filename, 10, Runtime.getRuntime().availableProcessors());
+        BinaryServer server = new BinaryServer(trie,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), threads);
+        server.start();
+
+        try (BinaryClient client = new BinaryClient(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+            final Semaphore permits = new Semaphore(window);
+            final AtomicInteger failures = new AtomicInteger();
+            BiConsumer<Object, Throwable> done = new BiConsumer<Object, Throwable>() {
+                public void accept(Object result, Throwable error) {
+                    if (error != null) {
+                        failures.incrementAndGet();
+                    }
+                    permits.release();
+                }
+            };
+
+            Random random = new Random(1);
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < requests; i++) {
+                    permits.acquireUninterruptibly();
+                    String prefix = "" + (char) ('a' + random.nextInt(26))
+                            + (char) ('a' + random.nextInt(26));
+                    client.getTopSuggestions(prefix, 10).whenComplete(done);
+                }
+                permits.acquireUninterruptibly(window);
+                permits.release(window);
+                long elapsed = System.nanoTime() - start;
+                System.out.println("round " + round + ": " + requests * 1000000000L / elapsed
+                        + " requests/s, " + failures.get() + " failed");
+            }
+        } finally {
+            server.stop();
+        }
+    }
+}
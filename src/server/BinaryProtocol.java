@@ -0,0 +1,136 @@
+package server;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import autocomplete.ITerm;
+import autocomplete.Term;
+
+/**
+ * The frames of the binary protocol spoken by BinaryServer and BinaryClient.
+ * Every number is big-endian, every string UTF-8.
+ *
+ * ==== Requests ====
+ * int length (of the rest of the frame), int id, byte op, int k, then the
+ * prefix up to the end of the frame. k is only read by OP_TOP, which
+ * answers an error unless it is from 1 to SuggestionServer.MAX_K.
+ *
+ * ==== Responses ====
+ * int length (of the rest of the frame), int id of the request, byte
+ * status, then:
+ * - OP_TOP, OP_ALL: int n, then n times long weight, short length and the
+ *   bytes of the term
+ * - OP_COUNT: int count
+ * - STATUS_ERROR: the message up to the end of the frame
+ * A connection can carry any number of requests before the first response
+ * arrives; responses come back in the order they are computed, which is
+ * not necessarily the order of the requests, and are matched by id.
+ *
+ * @author Daniel Xu
+ */
+final class BinaryProtocol {
+
+    static final byte OP_TOP = 1;
+    static final byte OP_ALL = 2;
+    static final byte OP_COUNT = 3;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    //id, op and k
+    static final int REQUEST_HEADER = 9;
+    //id and status
+    static final int RESPONSE_HEADER = 5;
+    //the largest request a server reads, a longer one closes the connection
+    static final int MAX_REQUEST = 64 * 1024;
+
+    private BinaryProtocol() {
+    }
+
+    /*
+     * Writes a request into out, which must have room for it
+     */
+    static void writeRequest(ByteBuffer out, int id, byte op, int k, byte[] prefix) {
+        out.putInt(REQUEST_HEADER + prefix.length);
+        out.putInt(id);
+        out.put(op);
+        out.putInt(k);
+        out.put(prefix);
+    }
+
+    /*
+     * @return a complete response frame holding terms, ready to be written
+     */
+    static ByteBuffer terms(int id, List<ITerm> terms) {
+        byte[][] words = new byte[terms.size()][];
+        int length = RESPONSE_HEADER + 4;
+        for (int i = 0; i < words.length; i++) {
+            words[i] = terms.get(i).getTerm().getBytes(StandardCharsets.UTF_8);
+            length += 10 + words[i].length;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(4 + length);
+        frame.putInt(length);
+        frame.putInt(id);
+        frame.put(STATUS_OK);
+        frame.putInt(words.length);
+        for (int i = 0; i < words.length; i++) {
+            frame.putLong(terms.get(i).getWeight());
+            frame.putShort((short) words[i].length);
+            frame.put(words[i]);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    /*
+     * @return a complete response frame holding count, ready to be written
+     */
+    static ByteBuffer count(int id, int count) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + RESPONSE_HEADER + 4);
+        frame.putInt(RESPONSE_HEADER + 4);
+        frame.putInt(id);
+        frame.put(STATUS_OK);
+        frame.putInt(count);
+        frame.flip();
+        return frame;
+    }
+
+    /*
+     * @return a complete error frame, ready to be written
+     */
+    static ByteBuffer error(int id, String message) {
+        byte[] bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(4 + RESPONSE_HEADER + bytes.length);
+        frame.putInt(RESPONSE_HEADER + bytes.length);
+        frame.putInt(id);
+        frame.put(STATUS_ERROR);
+        frame.put(bytes);
+        frame.flip();
+        return frame;
+    }
+
+    /*
+     * Reads the terms of a response, from its payload to the end of in
+     */
+    static List<ITerm> readTerms(ByteBuffer in) {
+        int n = in.getInt();
+        List<ITerm> terms = new ArrayList<ITerm>(n);
+        for (int i = 0; i < n; i++) {
+            long weight = in.getLong();
+            byte[] word = new byte[in.getShort() & 0xffff];
+            in.get(word);
+            terms.add(new Term(new String(word, StandardCharsets.UTF_8), weight));
+        }
+        return terms;
+    }
+
+    /*
+     * Reads a string from the position of in to its limit
+     */
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.remaining()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
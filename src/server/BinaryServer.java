@@ -0,0 +1,412 @@
+package server;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import autocomplete.IAutocomplete;
+
+/**
+ * Serves the queries of an IAutocomplete over the length-prefixed binary
+ * protocol of BinaryProtocol, for clients that send many small requests
+ * and for which HTTP and JSON would cost more than the lookup itself.
+ *
+ * ==== Threads ====
+ * One selector thread accepts the connections, reads the requests and
+ * writes the responses, all non-blocking. The queries run on a pool of
+ * worker threads, which hand the encoded responses back to the selector
+ * thread; with no workers they run on the selector thread itself, which is
+ * the fastest on a single core. The source is queried from many threads at
+ * once, so it must allow concurrent queries, see SuggestionServer.
+ *
+ * ==== Pipelining ====
+ * A client does not wait for a response before sending the next request:
+ * every complete frame read is dispatched at once, and the responses are
+ * written back as they are ready, up to 64 per gathering write, tagged with
+ * the id of their request. A connection with MAX_IN_FLIGHT requests not
+ * written back yet is not read until some are, so a client sending faster
+ * than the server answers fills its socket buffers instead of the memory
+ * of the server.
+ *
+ * ==== Errors ====
+ * A request with an unknown op, or an OP_TOP request with k outside 1 to
+ * SuggestionServer.MAX_K, is answered with an error frame, as is a query
+ * that throws; the connection stays open for the next requests. A
+ * connection that fails to read, write or be accepted is closed without
+ * affecting the others.
+ *
+ * @author Daniel Xu
+ */
+public class BinaryServer {
+
+    /**
+     * The number of requests of one connection that can be waiting to be
+     * answered before the server stops reading the connection
+     */
+    public static final int MAX_IN_FLIGHT = 1024;
+
+    private final IAutocomplete source;
+    private final ServerSocketChannel acceptor;
+    private final Selector selector;
+    //null when the queries run on the selector thread
+    private final ExecutorService workers;
+    //connections with responses to move to their write queue
+    private final ConcurrentLinkedQueue<Connection> ready;
+    private final AtomicBoolean wakeupPending;
+    private final Thread loop;
+    private volatile boolean running;
+
+
+    /*
+     * This makes a server for source with one worker per processor, bound
+     * to address but not started
+     *
+     * @param source the words to serve, queried concurrently
+     * @param address the address to listen on, port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public BinaryServer(IAutocomplete source, InetSocketAddress address) throws IOException {
+        this(source, address, Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+     * This makes a server for source, bound to address but not started
+     *
+     * @param source the words to serve, queried concurrently
+     * @param address the address to listen on, port 0 picks a free port
+     * @param threads the number of worker threads, 0 to run the queries on
+     *                the selector thread
+     * @throws IOException if the address cannot be bound
+     */
+    public BinaryServer(IAutocomplete source, InetSocketAddress address, int threads)
+            throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException("source must not be null");
+        }
+        if (threads < 0) {
+            throw new IllegalArgumentException("threads must not be negative: " + threads);
+        }
+        this.source = source;
+        this.ready = new ConcurrentLinkedQueue<Connection>();
+        this.wakeupPending = new AtomicBoolean();
+        this.selector = Selector.open();
+        this.acceptor = ServerSocketChannel.open();
+        acceptor.bind(address, 1024);
+        acceptor.configureBlocking(false);
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.workers = threads == 0 ? null : Executors.newFixedThreadPool(threads,
+                new ThreadFactory() {
+                    public Thread newThread(Runnable task) {
+                        Thread thread = new Thread(task, "binary-server-worker");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.loop = new Thread(new Runnable() {
+            public void run() {
+                select();
+            }
+        }, "binary-server-selector");
+    }
+
+    /**
+     * Starts accepting connections
+     */
+    public void start() {
+        running = true;
+        loop.start();
+    }
+
+    /**
+     * Stops the server and closes every connection. Requests not answered
+     * yet are dropped.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return acceptor.socket().getLocalPort();
+    }
+
+    /*
+     * The selector loop, until stop()
+     */
+    private void select() {
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                drainReady();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    } catch (IOException e) {
+                        //the client went away, the others are not affected
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("the selector failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                acceptor.close();
+                selector.close();
+            } catch (IOException e) {
+                //closing anyway
+            }
+        }
+    }
+
+    /*
+     * Accepts one pending connection. A failure, such as running out of file
+     * descriptors or a client resetting before it is set up, only loses that
+     * connection, the selector keeps serving the others
+     */
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            channel = acceptor.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    //closing anyway
+                }
+            }
+        }
+    }
+
+    /*
+     * Reads what the channel has and dispatches every complete request
+     */
+    private void read(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        if (connection.channel.read(in) < 0) {
+            connection.close();
+            return;
+        }
+
+        in.flip();
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < BinaryProtocol.REQUEST_HEADER || length > BinaryProtocol.MAX_REQUEST) {
+                //not a frame of this protocol, nothing after it can be read
+                connection.close();
+                return;
+            }
+            if (in.remaining() < 4 + length) {
+                break;
+            }
+            in.getInt();
+            int id = in.getInt();
+            byte op = in.get();
+            int k = in.getInt();
+            byte[] prefix = new byte[length - BinaryProtocol.REQUEST_HEADER];
+            in.get(prefix);
+            dispatch(connection, id, op, k, new String(prefix, StandardCharsets.UTF_8));
+        }
+        in.compact();
+        flush(connection);
+    }
+
+    private void dispatch(final Connection connection, final int id, final byte op, final int k,
+            final String prefix) {
+        if (workers == null) {
+            connection.out.add(answer(id, op, k, prefix));
+            return;
+        }
+        connection.inFlight++;
+        try {
+            workers.execute(new Runnable() {
+                public void run() {
+                    connection.done.add(answer(id, op, k, prefix));
+                    ready.add(connection);
+                    if (wakeupPending.compareAndSet(false, true)) {
+                        selector.wakeup();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //stopping
+            connection.inFlight--;
+        }
+    }
+
+    /*
+     * @return the response frame of one request, an error frame if the
+     *         request is not valid or the query fails
+     */
+    private ByteBuffer answer(int id, byte op, int k, String prefix) {
+        try {
+            switch (op) {
+                case BinaryProtocol.OP_TOP:
+                    if (k < 1 || k > SuggestionServer.MAX_K) {
+                        return BinaryProtocol.error(id,
+                                "k must be a number from 1 to " + SuggestionServer.MAX_K);
+                    }
+                    return BinaryProtocol.terms(id, source.getTopSuggestions(prefix, k));
+                case BinaryProtocol.OP_ALL:
+                    return BinaryProtocol.terms(id, source.getSuggestions(prefix));
+                case BinaryProtocol.OP_COUNT:
+                    return BinaryProtocol.count(id, source.countPrefixes(prefix));
+                default:
+                    return BinaryProtocol.error(id, "unknown op " + op);
+            }
+        } catch (Throwable e) {
+            //even an Error fails only this request, it must still be answered
+            //and must not reach the selector loop
+            return BinaryProtocol.error(id, e.toString());
+        }
+    }
+
+    /*
+     * Moves the responses of the workers to the write queues and writes them
+     */
+    private void drainReady() {
+        Connection connection;
+        while ((connection = ready.poll()) != null) {
+            ByteBuffer response;
+            while ((response = connection.done.poll()) != null) {
+                connection.out.add(response);
+                connection.inFlight--;
+            }
+            if (!connection.key.isValid()) {
+                continue;
+            }
+            try {
+                flush(connection);
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+    }
+
+    /*
+     * Writes as much of the write queue as the socket takes, asks to be
+     * told when it takes more if something is left, and reads the
+     * connection only while it has fewer than MAX_IN_FLIGHT requests not
+     * written back
+     */
+    private static void flush(Connection connection) throws IOException {
+        ArrayDeque<ByteBuffer> out = connection.out;
+        ByteBuffer[] batch = connection.batch;
+        while (!out.isEmpty()) {
+            int n = 0;
+            for (ByteBuffer response : out) {
+                if (n == batch.length) {
+                    break;
+                }
+                batch[n++] = response;
+            }
+            connection.channel.write(batch, 0, n);
+            boolean full = batch[n - 1].hasRemaining();
+            Arrays.fill(batch, 0, n, null);
+            while (!out.isEmpty() && !out.peek().hasRemaining()) {
+                out.poll();
+            }
+            if (full) {
+                //the socket buffer is full
+                break;
+            }
+        }
+
+        int ops = out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (connection.inFlight + out.size() >= MAX_IN_FLIGHT) {
+            ops &= ~SelectionKey.OP_READ;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    /*
+     * The state of one client connection. Everything but done is only
+     * touched by the selector thread.
+     */
+    private static final class Connection {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer in;
+        private final ArrayDeque<ByteBuffer> out;
+        //the responses of one gathering write
+        private final ByteBuffer[] batch;
+        //responses computed by the workers, not yet in out
+        private final ConcurrentLinkedQueue<ByteBuffer> done;
+        private int inFlight;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.in = ByteBuffer.allocate(4 + BinaryProtocol.MAX_REQUEST);
+            this.out = new ArrayDeque<ByteBuffer>();
+            this.batch = new ByteBuffer[64];
+            this.done = new ConcurrentLinkedQueue<ByteBuffer>();
+        }
+
+        void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package server;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import autocomplete.Autocomplete;
+
+/**
+ * Throughput test of SuggestionServer: builds an Autocomplete from a file,
+ * serves it on the loopback address and sends /suggest requests of
+ * two-letter prefixes from a number of client threads, each over its own
+ * keep-alive connection.
+ *
+ * HTTP/1.1 does not let a client send a request before the previous
+ * response arrives, so every connection carries one request at a time and
+ * the throughput is bound by the round trip, the JDK server's per-request
+ * work (parsing the headers, a task on the executor, two writes) and the
+ * clients sharing the same machine. For many small requests from a few
+ * clients, BinaryServer and its pipelined BinaryClient are the faster path,
+ * see BinaryClient.main().
+ *
+ * @author Daniel Xu
+ */
+public final class SuggestionLoadTest {
+
+    private SuggestionLoadTest() {
+    }
+
+    /**
+     * @param args the autocomplete file, then the number of requests
+     *             (100000 by default) and the number of client threads
+     *             (16 by default)
+     * @throws IOException if the server cannot start
+     * @throws InterruptedException if interrupted while waiting for the
+     *         clients
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String filename = args.length > 0 ? args[0] : "Autocomplete.txt";
+        final int requests = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        Autocomplete trie = new Autocomplete();
+        trie.buildTrieMapped(filename, 10, Runtime.getRuntime().availableProcessors());
+        SuggestionServer server = new SuggestionServer(trie,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        final String base = "http://" + InetAddress.getLoopbackAddress().getHostAddress()
+                + ":" + server.getPort() + "/suggest?k=10&q=";
+        System.out.println(trie.countPrefixes("") + " words, " + clients + " clients");
+
+        try {
+            for (int round = 0; round < 3; round++) {
+                final AtomicInteger remaining = new AtomicInteger(requests);
+                final AtomicInteger failures = new AtomicInteger();
+                final CountDownLatch done = new CountDownLatch(clients);
+                long start = System.nanoTime();
+                for (int c = 0; c < clients; c++) {
+                    final Random random = new Random(round * 1000 + c);
+                    Thread client = new Thread(new Runnable() {
+                        public void run() {
+                            byte[] scratch = new byte[4096];
+                            while (remaining.getAndDecrement() > 0) {
+                                String prefix = "" + (char) ('a' + random.nextInt(26))
+                                        + (char) ('a' + random.nextInt(26));
+                                if (!get(base + prefix, scratch)) {
+                                    failures.incrementAndGet();
+                                }
+                            }
+                            done.countDown();
+                        }
+                    }, "suggestion-load-" + c);
+                    client.setDaemon(true);
+                    client.start();
+                }
+                done.await();
+                long elapsed = System.nanoTime() - start;
+                System.out.println("round " + round + ": " + requests * 1000000000L / elapsed
+                        + " requests/s, " + failures.get() + " failed");
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /*
+     * Sends one request and reads the whole body, so the connection goes
+     * back to the keep-alive cache of the thread
+     *
+     * @return whether the answer was 200
+     */
+    private static boolean get(String url, byte[] scratch) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            int status = connection.getResponseCode();
+            InputStream in = status == 200 ? connection.getInputStream()
+                    : connection.getErrorStream();
+            if (in != null) {
+                try {
+                    while (in.read(scratch) >= 0) {
+                        //drained
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            return status == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
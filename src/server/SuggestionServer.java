@@ -0,0 +1,408 @@
+package server;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import autocomplete.Autocomplete;
+import autocomplete.IAutocomplete;
+import autocomplete.ITerm;
+
+/**
+ * Serves the queries of an IAutocomplete over HTTP, for clients that are
+ * not the Swing AutocompletePanel.
+ *
+ * ==== Endpoints ====
+ * - GET /suggest?q=prefix&k=10: the k heaviest words starting with q, as
+ *   {"suggestions":[{"term":"stack","weight":70},...]}. k defaults to
+ *   numberSuggestions() of the source, or 10 when that is 0.
+ * - GET /count?q=prefix: the number of words starting with q, as
+ *   {"count":3}
+ * A missing q is the empty prefix. A k that is not a number from 1 to
+ * MAX_K is answered with 400, any other method than GET with 405.
+ *
+ * ==== Threads ====
+ * The server is the JDK's com.sun.net.httpserver. Every request runs on its
+ * own virtual thread when the JDK has them (21 and later, looked up by
+ * reflection so the class still compiles on older JDKs), otherwise on a
+ * cached pool of daemon threads. The source is queried from many threads
+ * at once, so it must allow concurrent queries: Autocomplete,
+ * FrozenAutocomplete and FstAutocomplete do once built, a source that is
+ * written while serving should be a ConcurrentAutocomplete.
+ *
+ * ==== Responses ====
+ * Bodies are written as ASCII into byte buffers taken from a pool and
+ * returned after the response, so a request allocates no intermediate
+ * String or StringBuilder for its body. Every response has a fixed length,
+ * which lets the connection stay open for the next request of an HTTP/1.1
+ * client.
+ *
+ * @author Daniel Xu
+ */
+public class SuggestionServer {
+
+    /**
+     * The largest k a /suggest request can ask for
+     */
+    public static final int MAX_K = 1000;
+
+    private static final int DEFAULT_K = 10;
+    //buffers grown past this are dropped instead of going back to the pool
+    private static final int MAX_POOLED_BYTES = 64 * 1024;
+
+    static {
+        //the JDK server writes the headers and the body of a response
+        //separately, so without TCP_NODELAY a keep-alive client waits for
+        //a delayed ACK (about 40 ms) on every response. Read once, when the
+        //first server of the JVM is made.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final IAutocomplete source;
+    private final HttpServer http;
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<ResponseBuffer> buffers;
+
+
+    /*
+     * This makes a server for source, bound to address but not started
+     *
+     * @param source the words to serve, queried concurrently
+     * @param address the address to listen on, port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public SuggestionServer(IAutocomplete source, InetSocketAddress address) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException("source must not be null");
+        }
+        this.source = source;
+        this.buffers = new ConcurrentLinkedQueue<ResponseBuffer>();
+        this.executor = newRequestExecutor();
+        this.http = HttpServer.create(address, 1024);
+        http.setExecutor(executor);
+        http.createContext("/suggest", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                suggest(exchange);
+            }
+        });
+        http.createContext("/count", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                count(exchange);
+            }
+        });
+    }
+
+    /**
+     * Starts accepting requests
+     */
+    public void start() {
+        http.start();
+    }
+
+    /**
+     * Stops accepting requests and closes the connections
+     *
+     * @param delay the number of seconds to wait for the requests in progress
+     */
+    public void stop(int delay) {
+        http.stop(delay);
+        executor.shutdown();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    /*
+     * @return an executor running every task on a new virtual thread, or a
+     *         cached pool of daemon threads before Java 21
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "suggestion-server");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    private void suggest(HttpExchange exchange) throws IOException {
+        if (!checkMethod(exchange)) {
+            return;
+        }
+        String query = exchange.getRequestURI().getRawQuery();
+        String prefix = parameter(query, "q");
+        String rawK = parameter(query, "k");
+
+        int k = source.numberSuggestions() > 0 ? source.numberSuggestions() : DEFAULT_K;
+        if (rawK != null) {
+            k = parseK(rawK);
+            if (k < 0) {
+                error(exchange, 400, "k must be a number from 1 to " + MAX_K);
+                return;
+            }
+        }
+
+        List<ITerm> terms = source.getTopSuggestions(prefix == null ? "" : prefix, k);
+        ResponseBuffer body = acquire();
+        try {
+            body.append("{\"suggestions\":[");
+            for (int i = 0; i < terms.size(); i++) {
+                if (i > 0) {
+                    body.append(',');
+                }
+                body.append("{\"term\":");
+                body.appendString(terms.get(i).getTerm());
+                body.append(",\"weight\":");
+                body.append(terms.get(i).getWeight());
+                body.append('}');
+            }
+            body.append("]}");
+            send(exchange, 200, body);
+        } finally {
+            release(body);
+        }
+    }
+
+    private void count(HttpExchange exchange) throws IOException {
+        if (!checkMethod(exchange)) {
+            return;
+        }
+        String prefix = parameter(exchange.getRequestURI().getRawQuery(), "q");
+        int count = source.countPrefixes(prefix == null ? "" : prefix);
+
+        ResponseBuffer body = acquire();
+        try {
+            body.append("{\"count\":");
+            body.append(count);
+            body.append('}');
+            send(exchange, 200, body);
+        } finally {
+            release(body);
+        }
+    }
+
+    /*
+     * Answers anything but GET with 405
+     *
+     * @return whether the request is a GET
+     */
+    private static boolean checkMethod(HttpExchange exchange) throws IOException {
+        if ("GET".equals(exchange.getRequestMethod())) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", "GET");
+        exchange.sendResponseHeaders(405, -1);
+        exchange.close();
+        return false;
+    }
+
+    private void error(HttpExchange exchange, int status, String message) throws IOException {
+        ResponseBuffer body = acquire();
+        try {
+            body.append("{\"error\":");
+            body.appendString(message);
+            body.append('}');
+            send(exchange, status, body);
+        } finally {
+            release(body);
+        }
+    }
+
+    /*
+     * Sends body with its length, so the connection can be kept alive
+     */
+    private static void send(HttpExchange exchange, int status, ResponseBuffer body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.size);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body.bytes, 0, body.size);
+        //closes the exchange, not the connection
+        out.close();
+    }
+
+    private ResponseBuffer acquire() {
+        ResponseBuffer buffer = buffers.poll();
+        return buffer == null ? new ResponseBuffer() : buffer;
+    }
+
+    private void release(ResponseBuffer buffer) {
+        if (buffer.bytes.length <= MAX_POOLED_BYTES) {
+            buffer.size = 0;
+            buffers.offer(buffer);
+        }
+    }
+
+    /*
+     * @param query the raw query of the request URI, may be null
+     * @param name the name of the parameter
+     * @return the decoded value of the first parameter called name, or null
+     */
+    static String parameter(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        int from = 0;
+        while (from <= query.length()) {
+            int end = query.indexOf('&', from);
+            if (end < 0) {
+                end = query.length();
+            }
+            int equals = query.indexOf('=', from);
+            if (equals < 0 || equals > end) {
+                equals = end;
+            }
+            if (query.regionMatches(from, name, 0, name.length()) && from + name.length() == equals) {
+                String value = equals == end ? "" : query.substring(equals + 1, end);
+                try {
+                    return URLDecoder.decode(value, StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    //a malformed escape is read as it is
+                    return value;
+                }
+            }
+            from = end + 1;
+        }
+        return null;
+    }
+
+    /*
+     * @return k, or -1 if it is not a number from 1 to MAX_K
+     */
+    private static int parseK(String k) {
+        if (k.isEmpty() || k.length() > 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < k.length(); i++) {
+            char c = k.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value >= 1 && value <= MAX_K ? value : -1;
+    }
+
+    /*
+     * A growable byte array a JSON body is written into
+     */
+    private static final class ResponseBuffer {
+
+        private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+        private byte[] bytes = new byte[512];
+        private int size;
+
+        void append(char c) {
+            ensure(1);
+            bytes[size++] = (byte) c;
+        }
+
+        /*
+         * Appends text that is known to be ASCII without escapes
+         */
+        void append(String text) {
+            ensure(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                bytes[size++] = (byte) text.charAt(i);
+            }
+        }
+
+        void append(long value) {
+            if (value < 0) {
+                append('-');
+                value = -value;
+            }
+            ensure(20);
+            int start = size;
+            do {
+                bytes[size++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            //the digits were written lowest first
+            for (int i = start, j = size - 1; i < j; i++, j--) {
+                byte tmp = bytes[i];
+                bytes[i] = bytes[j];
+                bytes[j] = tmp;
+            }
+        }
+
+        /*
+         * Appends text as a quoted JSON string, anything that is not
+         * printable ASCII as an escape
+         */
+        void appendString(String text) {
+            ensure(text.length() + 2);
+            bytes[size++] = '"';
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c >= 0x20 && c < 0x7f && c != '"' && c != '\\') {
+                    ensure(1);
+                    bytes[size++] = (byte) c;
+                } else {
+                    ensure(6);
+                    bytes[size++] = '\\';
+                    bytes[size++] = 'u';
+                    bytes[size++] = HEX[c >>> 12];
+                    bytes[size++] = HEX[(c >>> 8) & 0xf];
+                    bytes[size++] = HEX[(c >>> 4) & 0xf];
+                    bytes[size++] = HEX[c & 0xf];
+                }
+            }
+            ensure(1);
+            bytes[size++] = '"';
+        }
+
+        private void ensure(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+            }
+        }
+    }
+
+    /**
+     * Builds an Autocomplete from a file and serves it until the process is
+     * stopped. The file is read with buildTrieMapped(), so it can be in
+     * either format, such as the Autocomplete.txt of IndexBuilder. See
+     * SuggestionLoadTest for a throughput test.
+     *
+     * @param args the autocomplete file, then the port (8080 by default)
+     *             and k (10 by default)
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        String filename = args.length > 0 ? args[0] : "Autocomplete.txt";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_K;
+
+        Autocomplete trie = new Autocomplete();
+        trie.buildTrieMapped(filename, k, Runtime.getRuntime().availableProcessors());
+        SuggestionServer server = new SuggestionServer(trie, new InetSocketAddress(port));
+        server.start();
+        System.out.println("serving " + trie.countPrefixes("") + " words on port "
+                + server.getPort());
+    }
+}
@@ -0,0 +1,1278 @@
+package test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import autocomplete.Autocomplete;
+import autocomplete.AutocompleteCursor;
+import autocomplete.CachingAutocomplete;
+import autocomplete.ConcurrentAutocomplete;
+import autocomplete.FrozenAutocomplete;
+import autocomplete.FstAutocomplete;
+import autocomplete.FstBuilder;
+import autocomplete.ITerm;
+import autocomplete.InfixIndex;
+import autocomplete.InstrumentedAutocomplete;
+import autocomplete.MappedAutocomplete;
+import autocomplete.OperationStats;
+import autocomplete.PhraseAutocomplete;
+import autocomplete.QueryTrace;
+import autocomplete.RadixAutocomplete;
+import autocomplete.ShardedAutocomplete;
+import autocomplete.SortedTrieLoader;
+import autocomplete.SuggestionPage;
+import autocomplete.SuggestionBuffer;
+import autocomplete.TieredAutocomplete;
+import server.BinaryClient;
+import server.BinaryServer;
+import server.SuggestionServer;
+
+public class AutocompleteTest {
+
+
+    /*
+     * Builds a small trie shared by the tests below
+     */
+    private Autocomplete sample() {
+        Autocomplete a = new Autocomplete();
+        a.addWord("data", 40);
+        a.addWord("database", 90);
+        a.addWord("date", 15);
+        a.addWord("dart", 60);
+        a.addWord("stack", 70);
+        a.addWord("stacks", 20);
+        a.addWord("structures", 85);
+        a.addWord("trees", 5);
+        return a;
+    }
+
+
+    /*
+     * This checks that getTopSuggestions() returns the k heaviest
+     * words under the prefix, heaviest first
+     */
+    @Test
+    public void testTopSuggestions() {
+        Autocomplete a = sample();
+
+        List<ITerm> top = a.getTopSuggestions("da", 3);
+        assertEquals(3, top.size());
+        assertEquals("database", top.get(0).getTerm());
+        assertEquals("dart", top.get(1).getTerm());
+        assertEquals("data", top.get(2).getTerm());
+
+        top = a.getTopSuggestions("", 2);
+        assertEquals(2, top.size());
+        assertEquals("database", top.get(0).getTerm());
+        assertEquals("structures", top.get(1).getTerm());
+
+        //the prefix itself is a word
+        top = a.getTopSuggestions("stack", 5);
+        assertEquals(2, top.size());
+        assertEquals("stack", top.get(0).getTerm());
+        assertEquals("stacks", top.get(1).getTerm());
+    }
+
+
+    /*
+     * This checks that getTopSuggestions() agrees with sorting the
+     * full getSuggestions() list by weight
+     */
+    @Test
+    public void testTopSuggestionsMatchesFullSort() {
+        Autocomplete a = sample();
+
+        for (String prefix : new String[] {"", "d", "dat", "s", "st", "t"}) {
+            List<ITerm> all = a.getSuggestions(prefix);
+            all.sort(ITerm.byReverseWeightOrder());
+            List<ITerm> top = a.getTopSuggestions(prefix, 4);
+
+            assertEquals(Math.min(4, all.size()), top.size());
+            for (int i = 0; i < top.size(); i++) {
+                assertEquals(all.get(i).getWeight(), top.get(i).getWeight());
+            }
+        }
+    }
+
+
+    /*
+     * This checks prefixes that do not match anything
+     */
+    @Test
+    public void testTopSuggestionsNoMatch() {
+        Autocomplete a = sample();
+
+        assertTrue(a.getTopSuggestions("x", 5).isEmpty());
+        assertTrue(a.getTopSuggestions("Da", 5).isEmpty());
+        assertTrue(a.getTopSuggestions(null, 5).isEmpty());
+        assertTrue(a.getTopSuggestions("d", 0).isEmpty());
+    }
+
+
+    /*
+     * This checks that words of equal weight in different subtrees come back
+     * in lexicographic order from every top-k search, the word higher up not
+     * being returned before a subtree holding a word that sorts first
+     */
+    @Test
+    public void testTopSuggestionsTies() {
+        Autocomplete a = new Autocomplete();
+        RadixAutocomplete r = new RadixAutocomplete();
+        ConcurrentAutocomplete c = new ConcurrentAutocomplete();
+        FstBuilder builder = new FstBuilder(5);
+        String[] words = {"abc", "abd", "b", "bb"};
+        for (String word : words) {
+            a.addWord(word, 5);
+            r.addWord(word, 5);
+            c.addWord(word, 5);
+            builder.add(word, 5);
+        }
+        FstAutocomplete f = builder.finish(5);
+        SuggestionBuffer buffer = new SuggestionBuffer(1);
+
+        List<String> expected = new ArrayList<String>();
+        for (int k = 1; k <= words.length; k++) {
+            expected.add("5\t" + words[k - 1]);
+            assertEquals(expected.toString(), a.getTopSuggestions("", k).toString());
+            assertEquals(expected.toString(), a.freeze().getTopSuggestions("", k).toString());
+            assertEquals(expected.toString(), r.getTopSuggestions("", k).toString());
+            assertEquals(expected.toString(), c.getTopSuggestions("", k).toString());
+            assertEquals(expected.toString(), f.getTopSuggestions("", k).toString());
+        }
+        a.getTopSuggestions("", buffer);
+        assertEquals("[5\tabc]", buffer.toList().toString());
+    }
+
+
+    /*
+     * This checks that when every weight is equal, as in the files of
+     * IndexBuilder, a top-k search returns the first words in lexicographic
+     * order without expanding the rest of the trie
+     */
+    @Test
+    public void testTopSuggestionsAllTied() {
+        Autocomplete a = new Autocomplete();
+        RadixAutocomplete r = new RadixAutocomplete();
+        for (int i = 0; i < 20000; i++) {
+            a.addWord(toWord(i), 0);
+            r.addWord(toWord(i), 0);
+        }
+        SuggestionBuffer buffer = new SuggestionBuffer(10);
+
+        for (String prefix : new String[] {"", "b", "kq"}) {
+            List<ITerm> all = a.getSuggestions(prefix);
+            String expected = all.subList(0, Math.min(10, all.size())).toString();
+            assertEquals(prefix, expected, a.getTopSuggestions(prefix, 10).toString());
+            assertEquals(prefix, expected, a.freeze().getTopSuggestions(prefix, 10).toString());
+            assertEquals(prefix, expected, r.getTopSuggestions(prefix, 10).toString());
+            a.getTopSuggestions(prefix, buffer);
+            assertEquals(prefix, expected, buffer.toList().toString());
+            assertEquals(prefix, expected, a.streamSuggestions(prefix).limit(10)
+                    .collect(Collectors.toList()).toString());
+
+            QueryTrace trace = new InstrumentedAutocomplete(a).explain(prefix, 10);
+            assertTrue(prefix + ": " + trace.getNodesVisited() + " nodes visited",
+                    trace.getNodesVisited() <= 50);
+        }
+    }
+
+
+    /*
+     * This checks that a materialized trie answers like the search,
+     * both above and below the materialized depth, and after addWord()
+     */
+    @Test
+    public void testMaterialize() {
+        Autocomplete a = sample();
+        a.materialize(2, 1);
+
+        List<ITerm> top = a.getTopSuggestions("d", 2);
+        assertEquals(2, top.size());
+        assertEquals("database", top.get(0).getTerm());
+        assertEquals("dart", top.get(1).getTerm());
+
+        //deeper than the materialized depth
+        top = a.getTopSuggestions("sta", 2);
+        assertEquals("stack", top.get(0).getTerm());
+
+        //more than the materialized k
+        assertEquals(4, a.getTopSuggestions("d", 4).size());
+
+        a.addWord("dam", 95);
+        top = a.getTopSuggestions("d", 2);
+        assertEquals("dam", top.get(0).getTerm());
+        assertEquals("database", top.get(1).getTerm());
+
+        a.materialize(0, 0);
+        assertEquals("dam", a.getTopSuggestions("", 1).get(0).getTerm());
+    }
+
+
+    /*
+     * This checks that the radix trie answers every query like the
+     * plain trie, including words that end part way along an edge
+     */
+    @Test
+    public void testRadixMatchesTrie() {
+        Autocomplete a = sample();
+        RadixAutocomplete r = new RadixAutocomplete();
+        for (ITerm term : a.getSuggestions("")) {
+            r.addWord(term.getTerm(), term.getWeight());
+        }
+
+        //a word that ends on an existing node still counts as a prefix
+        Autocomplete b = new Autocomplete();
+        b.addWord("database", 1);
+        b.addWord("data", 2);
+        assertEquals(2, b.countPrefixes("data"));
+
+        for (String prefix : new String[] {"", "d", "da", "dat", "data",
+            "datab", "s", "stac", "stacks", "stacked", "x", "Da"}) {
+            assertEquals(prefix, a.countPrefixes(prefix), r.countPrefixes(prefix));
+            assertEquals(prefix, a.getSuggestions(prefix).toString(),
+                    r.getSuggestions(prefix).toString());
+            assertEquals(prefix, a.getTopSuggestions(prefix, 3).toString(),
+                    r.getTopSuggestions(prefix, 3).toString());
+            assertEquals(prefix, a.getSubTrie(prefix) == null,
+                    r.getSubTrie(prefix) == null);
+        }
+
+        assertTrue(r.countNodes() < a.countNodes());
+        assertTrue(r.estimateHeapBytes() < a.estimateHeapBytes());
+    }
+
+
+    /*
+     * This checks that a frozen trie answers every query like the
+     * trie it was made from and cannot be changed
+     */
+    @Test
+    public void testFreeze() {
+        Autocomplete a = sample();
+        FrozenAutocomplete f = a.freeze();
+
+        for (String prefix : new String[] {"", "d", "da", "dat", "data",
+            "datab", "s", "stack", "stacks", "stacked", "x", "Da"}) {
+            assertEquals(prefix, a.countPrefixes(prefix), f.countPrefixes(prefix));
+            assertEquals(prefix, a.getSuggestions(prefix).toString(),
+                    f.getSuggestions(prefix).toString());
+            assertEquals(prefix, a.getTopSuggestions(prefix, 3).toString(),
+                    f.getTopSuggestions(prefix, 3).toString());
+        }
+
+        assertEquals(a.countNodes(), f.countNodes());
+        assertTrue(f.estimateHeapBytes() * 3 < a.estimateHeapBytes() * 2);
+
+        try {
+            f.addWord("dog", 1);
+            fail("a frozen trie should not accept words");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(0, f.countPrefixes("dog"));
+        }
+    }
+
+
+    /*
+     * This checks that a snapshot answers like the trie it was written
+     * from, and that a corrupt snapshot is refused
+     */
+    @Test
+    public void testSnapshot() throws IOException {
+        Autocomplete a = sample();
+        Path file = Files.createTempFile("autocomplete", ".snapshot");
+
+        try {
+            a.writeSnapshot(file);
+            MappedAutocomplete m = MappedAutocomplete.open(file);
+
+            for (String prefix : new String[] {"", "d", "dat", "data", "s",
+                "stacks", "x"}) {
+                assertEquals(prefix, a.countPrefixes(prefix), m.countPrefixes(prefix));
+                assertEquals(prefix, a.getSuggestions(prefix).toString(),
+                        m.getSuggestions(prefix).toString());
+                assertEquals(prefix, a.getTopSuggestions(prefix, 3).toString(),
+                        m.getTopSuggestions(prefix, 3).toString());
+            }
+
+            //flip one byte of the body
+            try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+                raw.seek(raw.length() - 1);
+                int last = raw.read();
+                raw.seek(raw.length() - 1);
+                raw.write(last ^ 1);
+            }
+            try {
+                MappedAutocomplete.open(file);
+                fail("a corrupt snapshot should be refused");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("checksum"));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+    /*
+     * This checks that a parallel build gives the same trie as
+     * buildTrie() on the same file
+     */
+    @Test
+    public void testBuildTrieParallel() throws IOException {
+        Path file = Files.createTempFile("autocomplete", ".txt");
+
+        try {
+            StringBuilder lines = new StringBuilder("8\n");
+            for (ITerm term : sample().getSuggestions("")) {
+                lines.append(term.toString()).append("\n");
+            }
+            lines.append("3\tNot Valid\n");
+            Files.write(file, lines.toString().getBytes());
+
+            Autocomplete a = new Autocomplete();
+            a.buildTrie(file.toString(), 5);
+            Autocomplete p = new Autocomplete();
+            p.buildTrieParallel(file.toString(), 5, 4);
+
+            assertEquals(8, p.countPrefixes(""));
+            assertEquals(5, p.numberSuggestions());
+            assertTrue(p.lastBuildRate() > 0);
+            for (String prefix : new String[] {"", "d", "dat", "s", "t", "x"}) {
+                assertEquals(prefix, a.countPrefixes(prefix), p.countPrefixes(prefix));
+                assertEquals(prefix, a.getSuggestions(prefix).toString(),
+                        p.getSuggestions(prefix).toString());
+                assertEquals(prefix, a.getTopSuggestions(prefix, 3).toString(),
+                        p.getTopSuggestions(prefix, 3).toString());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+    /*
+     * This checks that loading sorted words gives the same trie as
+     * addWord(), and how out of order words are handled
+     */
+    @Test
+    public void testSortedLoader() {
+        Autocomplete a = sample();
+        Autocomplete b = new Autocomplete();
+        SortedTrieLoader loader = new SortedTrieLoader(b, false);
+        for (ITerm term : a.getSuggestions("")) {
+            loader.add(term.getTerm(), term.getWeight());
+        }
+        loader.add("stack", 70);
+        loader.add("apple", 30);
+        loader.finish();
+        a.addWord("stack", 70);
+        a.addWord("apple", 30);
+
+        assertEquals(2, loader.getUnsorted());
+        for (String prefix : new String[] {"", "a", "d", "dat", "data", "s",
+            "stack", "stacks", "t", "x"}) {
+            assertEquals(prefix, a.countPrefixes(prefix), b.countPrefixes(prefix));
+            assertEquals(prefix, a.getSuggestions(prefix).toString(),
+                    b.getSuggestions(prefix).toString());
+            assertEquals(prefix, a.getTopSuggestions(prefix, 3).toString(),
+                    b.getTopSuggestions(prefix, 3).toString());
+        }
+
+        SortedTrieLoader strict = new SortedTrieLoader(new Autocomplete(), true);
+        strict.add("trees", 1);
+        try {
+            strict.add("data", 1);
+            fail("a strict loader should reject unsorted words");
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, strict.getLoaded());
+        }
+    }
+
+
+    /*
+     * This checks that buildTrieSorted() reads the file written by
+     * IndexBuilder.createAutocompleteFile(): a count, then "0 word" lines in
+     * the order of the pages
+     */
+    @Test
+    public void testBuildTrieSortedIndexFile() throws IOException {
+        Path file = Files.createTempFile("autocomplete", ".txt");
+
+        try {
+            Files.write(file, "4\n0 data\n0 trees\n0 stack\n0 Structures\n".getBytes());
+            Autocomplete a = new Autocomplete();
+            a.buildTrieSorted(file.toString(), 5, false);
+            assertEquals(4, a.countPrefixes(""));
+            assertEquals("[0\tdata, 0\tstack, 0\tstructures, 0\ttrees]",
+                    a.getSuggestions("").toString());
+
+            try {
+                new Autocomplete().buildTrieSorted(file.toString(), 5, true);
+                fail("the words of the pages are not sorted");
+            } catch (IllegalArgumentException e) {
+                //trees comes before stack
+            }
+
+            Files.write(file, "3\n0 data\n0 stack\n0 trees\n".getBytes());
+            Autocomplete b = new Autocomplete();
+            b.buildTrieSorted(file.toString(), 5, true);
+            assertEquals(3, b.countPrefixes(""));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+
+    /*
+     * This checks that the mapped parser reads both line formats and
+     * skips the lines buildTrie() would skip
+     */
+    @Test
+    public void testBuildTrieMapped() throws IOException {
+        Path file = Files.createTempFile("autocomplete", ".txt");
+
+        try {
+            String lines = "4\n"
+                    + "40\tdata\n"
+                    + "  90\tDatabase  \r\n"
+                    + "0 trees\n"
+                    + "\n"
+                    + "15\tnot valid\n"
+                    + "stacks\n"
+                    + "70\tstack";
+            Files.write(file, lines.getBytes());
+
+            Autocomplete a = new Autocomplete();
+            a.buildTrieMapped(file.toString(), 5, 2);
+
+            assertEquals(4, a.countPrefixes(""));
+            assertEquals(2, a.countPrefixes("data"));
+            assertEquals("[90\tdatabase, 40\tdata]",
+                    a.getTopSuggestions("da", 5).toString());
+            assertEquals("[0\ttrees]", a.getSuggestions("t").toString());
+            assertEquals("[70\tstack]", a.getSuggestions("s").toString());
+
+            //a further tab-separated field is ignored, as in buildTrie()
+            Files.write(file, "5\tqueue\textra field\n30\tqueues\t\n".getBytes());
+            Autocomplete mapped = new Autocomplete();
+            mapped.buildTrieMapped(file.toString(), 5, 2);
+            Autocomplete read = new Autocomplete();
+            read.buildTrie(file.toString(), 5);
+            assertEquals("[5\tqueue, 30\tqueues]", read.getSuggestions("q").toString());
+            assertEquals(read.getSuggestions("q").toString(),
+                    mapped.getSuggestions("q").toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /*
+     * This checks that children are kept in letter order as a node grows
+     * through every child layout, up to all 26 letters
+     */
+    @Test
+    public void testChildLayouts() {
+        Autocomplete a = new Autocomplete();
+        StringBuilder expected = new StringBuilder();
+
+        //added back to front, so every child lands before the others
+        for (char c = 'z'; c >= 'a'; c--) {
+            a.addWord("q" + c, c);
+            assertEquals('z' - c + 1, a.countPrefixes("q"));
+            assertEquals(1, a.countPrefixes("q" + c));
+            assertEquals("qz", a.getTopSuggestions("q", 1).get(0).getTerm());
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            if (expected.length() > 0) {
+                expected.append(", ");
+            }
+            expected.append((int) c).append("\tq").append(c);
+        }
+        assertEquals("[" + expected + "]", a.getSuggestions("q").toString());
+        //the root, q and its 26 children
+        assertEquals(28, a.countNodes());
+        assertEquals(0, a.countPrefixes("qaa"));
+    }
+
+    /*
+     * This checks that a ConcurrentAutocomplete answers like an Autocomplete
+     * holding the same words
+     */
+    @Test
+    public void testConcurrentMatchesTrie() {
+        Autocomplete a = sample();
+        ConcurrentAutocomplete c = new ConcurrentAutocomplete();
+        c.addWords(Arrays.asList("data", "database", "date", "dart"),
+                Arrays.asList(40L, 90L, 15L, 60L));
+        assertEquals(1, c.getVersion());
+
+        c.addWord("stack", 70);
+        c.addWord("stacks", 20);
+        c.addWord("structures", 85);
+        c.addWord("trees", 5);
+        c.addWord("dat", 1);
+        c.addWord("not valid", 1);
+        assertEquals(6, c.getVersion());
+
+        a.addWord("dat", 1);
+        for (String prefix : new String[] {"", "d", "dat", "stack", "x"}) {
+            assertEquals(prefix, a.countPrefixes(prefix), c.countPrefixes(prefix));
+            assertEquals(prefix, a.getSuggestions(prefix).toString(),
+                    c.getSuggestions(prefix).toString());
+            assertEquals(prefix, a.getTopSuggestions(prefix, 3).toString(),
+                    c.getTopSuggestions(prefix, 3).toString());
+        }
+    }
+
+    /*
+     * This checks that readers running during updates only see whole
+     * versions: counts never go back and every listed word is counted
+     */
+    @Test
+    public void testConcurrentReaders() throws InterruptedException {
+        final ConcurrentAutocomplete c = new ConcurrentAutocomplete();
+        final int words = 2000;
+        final String[] failure = new String[1];
+
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < words; i++) {
+                    c.addWord(toWord(i), i);
+                }
+            }
+        });
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(new Runnable() {
+                public void run() {
+                    int last = 0;
+                    while (last < words && failure[0] == null) {
+                        int count = c.countPrefixes("");
+                        List<ITerm> top = c.getTopSuggestions("", 1);
+                        if (count < last || count > 0 && top.isEmpty()) {
+                            failure[0] = "count " + count + " after " + last;
+                        }
+                        last = count;
+                    }
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure[0], failure[0]);
+        assertEquals(words, c.countPrefixes(""));
+        assertEquals(words - 1, c.getTopSuggestions("", 1).get(0).getWeight());
+    }
+
+    /*
+     * This checks that a TieredAutocomplete merges its delta and base like
+     * one trie, before and after compaction, with the newest weight winning
+     */
+    @Test
+    public void testTieredMatchesTrie() {
+        Autocomplete a = sample();
+        TieredAutocomplete t = new TieredAutocomplete(a.freeze(), 3);
+
+        String[] words = {"dart", "dot", "stacked", "data", "trees", "tree"};
+        long[] weights = {10, 50, 75, 95, 80, 1};
+        for (int i = 0; i < words.length; i++) {
+            a.addWord(words[i], weights[i]);
+            t.addWord(words[i], weights[i]);
+            assertTrue(t.deltaSize() > 0);
+        }
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (String prefix : new String[] {"", "d", "da", "dart", "s", "tree", "x"}) {
+                assertEquals(prefix, a.countPrefixes(prefix), t.countPrefixes(prefix));
+                assertEquals(prefix, a.getSuggestions(prefix).toString(),
+                        t.getSuggestions(prefix).toString());
+                assertEquals(prefix, a.getTopSuggestions(prefix, 3).toString(),
+                        t.getTopSuggestions(prefix, 3).toString());
+            }
+            t.flush();
+            assertEquals(0, t.deltaSize());
+            assertEquals(a.countPrefixes(""), t.getBase().countPrefixes(""));
+        }
+        assertEquals("[95\tdata, 90\tdatabase, 15\tdate]",
+                t.getTopSuggestions("da", 3).toString());
+
+        //once closed the words stay in the delta and flush() refuses
+        t.close();
+        for (String word : new String[] {"dab", "dad", "dam", "dan"}) {
+            t.addWord(word, 2);
+        }
+        assertEquals(4, t.deltaSize());
+        assertEquals(a.countPrefixes("") + 4, t.countPrefixes(""));
+        try {
+            t.flush();
+            fail("the compaction thread is stopped");
+        } catch (IllegalStateException e) {
+            assertEquals(4, t.deltaSize());
+        }
+    }
+
+    /*
+     * This checks that a cursor typing, deleting and jumping between
+     * prefixes answers like the prefix queries
+     */
+    @Test
+    public void testCursor() {
+        Autocomplete a = sample();
+        AutocompleteCursor cursor = a.openCursor();
+
+        assertEquals(a.countPrefixes(""), cursor.countPrefixes());
+        assertTrue(cursor.advance('d'));
+        assertTrue(cursor.advance('a'));
+        assertTrue(cursor.advance('t'));
+        assertEquals("dat", cursor.getText());
+        assertEquals(a.getTopSuggestions("dat", 2).toString(), cursor.top(2).toString());
+        assertEquals(a.getSuggestions("dat").toString(), cursor.getSuggestions().toString());
+
+        //no word goes on with x, or with anything not a-z
+        assertFalse(cursor.advance('x'));
+        assertFalse(cursor.advance('A'));
+        assertEquals(0, cursor.countPrefixes());
+        assertTrue(cursor.top(5).isEmpty());
+        assertTrue(cursor.backspace());
+        assertTrue(cursor.backspace());
+        assertTrue(cursor.matches());
+        assertEquals(a.countPrefixes("dat"), cursor.countPrefixes());
+
+        assertTrue(cursor.moveTo("stack"));
+        assertEquals(a.getTopSuggestions("stack", 5).toString(), cursor.top(5).toString());
+        assertFalse(cursor.moveTo("stackz"));
+        assertTrue(cursor.moveTo("da"));
+        assertEquals(a.countPrefixes("da"), cursor.countPrefixes());
+
+        //words added later are seen below the cursor
+        a.addWord("dab", 99);
+        assertEquals("dab", cursor.top(1).get(0).getTerm());
+
+        cursor.reset();
+        assertFalse(cursor.backspace());
+        assertEquals("", cursor.getText());
+    }
+
+    /*
+     * This checks that the buffer queries answer like the List queries, and
+     * that once warmed up they allocate nothing
+     */
+    @Test
+    public void testSuggestionBuffer() {
+        Autocomplete a = sample();
+        SuggestionBuffer buffer = new SuggestionBuffer(3);
+        StringBuilder prefix = new StringBuilder();
+
+        for (String text : new String[] {"", "d", "da", "stack", "x", "D"}) {
+            prefix.setLength(0);
+            prefix.append(text);
+            assertEquals(text, a.countPrefixes(text), a.countPrefixes(prefix));
+            a.getTopSuggestions(prefix, buffer);
+            assertEquals(text, a.getTopSuggestions(text, 3).toString(),
+                    buffer.toList().toString());
+            a.getSuggestions(prefix, buffer);
+            List<ITerm> all = a.getSuggestions(text);
+            assertEquals(text, all.subList(0, Math.min(3, all.size())).toString(),
+                    buffer.toList().toString());
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String[] texts = {"d", "da", "s", "stack", ""};
+        long before = 0;
+        for (int round = 0; round < 2; round++) {
+            //the first round warms up the buffer and the code
+            before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < 10000; i++) {
+                prefix.setLength(0);
+                prefix.append(texts[i % texts.length]);
+                a.getTopSuggestions(prefix, buffer);
+                a.getSuggestions(prefix, buffer);
+                a.countPrefixes(prefix);
+            }
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(allocated + " bytes for 30000 queries", allocated < 30000);
+    }
+
+    /*
+     * This checks that getFuzzySuggestions() finds words despite typos and
+     * ranks a match down by EDIT_PENALTY per edit
+     */
+    @Test
+    public void testFuzzySuggestions() {
+        Autocomplete a = sample();
+
+        //no edits is the same as getTopSuggestions()
+        assertEquals(a.getTopSuggestions("da", 3).toString(),
+                a.getFuzzySuggestions("da", 0, 3).toString());
+        assertTrue(a.getSuggestions("dta").isEmpty());
+
+        //one extra letter (database, dart) or one wrong letter (stack)
+        List<ITerm> fuzzy = a.getFuzzySuggestions("dta", 1, 2);
+        assertEquals("[90\tdatabase, 70\tstack]", fuzzy.toString());
+        assertTrue(a.getFuzzySuggestions("dtx", 1, 5).isEmpty());
+
+        //exact matches beat two edits away (structures, 85 / 100)
+        fuzzy = a.getFuzzySuggestions("stac", 2, 10);
+        assertEquals("stack", fuzzy.get(0).getTerm());
+        assertEquals("stacks", fuzzy.get(1).getTerm());
+        assertEquals("structures", fuzzy.get(2).getTerm());
+
+        //a missing letter and a wrong letter
+        assertEquals("trees", a.getFuzzySuggestions("tres", 1, 1).get(0).getTerm());
+        assertEquals("trees", a.getFuzzySuggestions("Trees", 1, 1).get(0).getTerm());
+        assertTrue(a.getFuzzySuggestions("zzz", 2, 5).isEmpty());
+    }
+
+    /*
+     * This checks that CachingAutocomplete answers like the trie it wraps,
+     * and that addWord() only invalidates the prefixes of the new word
+     */
+    @Test
+    public void testCachingAutocomplete() {
+        Autocomplete a = sample();
+        CachingAutocomplete c = new CachingAutocomplete(sample(), 5, 1000);
+
+        for (int round = 0; round < 2; round++) {
+            for (String prefix : new String[] {"", "da", "s", "x"}) {
+                assertEquals(a.getTopSuggestions(prefix, 3).toString(),
+                        c.getTopSuggestions(prefix, 3).toString());
+                assertEquals(a.getSuggestions(prefix).toString(),
+                        c.getSuggestions(prefix).toString());
+            }
+        }
+        assertEquals(8, c.getMissCount());
+        assertEquals(8, c.getHitCount());
+        assertEquals(8, c.getCachedEntries());
+
+        //"" and "da" are on the path of "dab", "s" and "x" are not
+        a.addWord("dab", 95);
+        c.addWord("dab", 95);
+        assertEquals(4, c.getInvalidationCount());
+        assertEquals(4, c.getCachedEntries());
+        assertEquals(a.getTopSuggestions("da", 5).toString(),
+                c.getTopSuggestions("da", 5).toString());
+        assertEquals("dab", c.getTopSuggestions("", 1).get(0).getTerm());
+        assertEquals(a.getSuggestions("s").toString(), c.getSuggestions("s").toString());
+    }
+
+    /*
+     * This checks that the cache stays within its bound, and that a prefix
+     * looked up often is not pushed out by many prefixes looked up once
+     */
+    @Test
+    public void testCachingEviction() {
+        Autocomplete a = new Autocomplete();
+        for (int i = 0; i < 2000; i++) {
+            a.addWord(toWord(i), i);
+        }
+        CachingAutocomplete c = new CachingAutocomplete(a, 1, 100);
+
+        for (int i = 0; i < 20; i++) {
+            c.getTopSuggestions("b", 1);
+        }
+        for (int i = 0; i < 2000; i++) {
+            c.getTopSuggestions(toWord(i), 1);
+            assertTrue(c.getCachedTerms() <= 100);
+        }
+        assertTrue(c.getEvictionCount() > 0);
+
+        long hits = c.getHitCount();
+        c.getTopSuggestions("b", 1);
+        assertEquals(hits + 1, c.getHitCount());
+    }
+
+    /*
+     * This checks that getSuggestionsBatch() answers every distinct prefix
+     * like getTopSuggestions(), sequentially and split across threads
+     */
+    @Test
+    public void testSuggestionsBatch() {
+        Autocomplete a = new Autocomplete();
+        List<String> prefixes = new ArrayList<String>();
+        for (int i = 0; i < 3000; i++) {
+            a.addWord(toWord(i * 7), i);
+            prefixes.add(toWord(i * 13 % 900));
+        }
+        prefixes.add("");
+        prefixes.add("Not valid");
+
+        for (int parallelism : new int[] {1, 4}) {
+            Map<String, List<ITerm>> batch = a.getSuggestionsBatch(prefixes, 4, parallelism);
+            assertEquals(new HashSet<String>(prefixes).size(), batch.size());
+            String previous = null;
+            for (Map.Entry<String, List<ITerm>> entry : batch.entrySet()) {
+                assertEquals(entry.getKey(), a.getTopSuggestions(entry.getKey(), 4).toString(),
+                        entry.getValue().toString());
+                assertTrue(previous == null || previous.compareTo(entry.getKey()) < 0);
+                previous = entry.getKey();
+            }
+        }
+    }
+
+    /*
+     * This checks that iterateSuggestions() returns every word, heaviest
+     * first and in lexicographic order on equal weight, and that pages
+     * resume where the previous one stopped
+     */
+    @Test
+    public void testSuggestionPages() {
+        Autocomplete a = new Autocomplete();
+        for (int i = 0; i < 500; i++) {
+            a.addWord("p" + toWord(i * 11), i % 37);
+        }
+
+        List<ITerm> expected = new ArrayList<ITerm>(a.getSuggestions("p"));
+        Collections.sort(expected, new Comparator<ITerm>() {
+            public int compare(ITerm t1, ITerm t2) {
+                if (t1.getWeight() != t2.getWeight()) {
+                    return t1.getWeight() > t2.getWeight() ? -1 : 1;
+                }
+                return t1.getTerm().compareTo(t2.getTerm());
+            }
+        });
+
+        List<ITerm> all = new ArrayList<ITerm>();
+        for (Iterator<ITerm> it = a.iterateSuggestions("p"); it.hasNext();) {
+            all.add(it.next());
+        }
+        assertEquals(expected.toString(), all.toString());
+        assertEquals(expected.subList(0, 10).toString(),
+                a.streamSuggestions("p").limit(10).collect(Collectors.toList()).toString());
+        assertFalse(a.iterateSuggestions("q").hasNext());
+        assertFalse(a.iterateSuggestions(null).hasNext());
+        assertEquals(0, a.streamSuggestions(null).count());
+        assertTrue(a.getSuggestionPage(null, 30, null).getTerms().isEmpty());
+        assertFalse(a.getSuggestionPage(null, 30, null).hasNext());
+
+        List<ITerm> paged = new ArrayList<ITerm>();
+        String token = null;
+        int pages = 0;
+        do {
+            SuggestionPage page = a.getSuggestionPage("p", 30, token);
+            paged.addAll(page.getTerms());
+            token = page.getNextToken();
+            pages++;
+        } while (token != null);
+        assertEquals(expected.toString(), paged.toString());
+        assertEquals(17, pages);
+
+        String second = a.getSuggestionPage("p", 30, null).getNextToken();
+        try {
+            a.getSuggestionPage("pa", 30, second);
+            fail("a token is only valid for its prefix");
+        } catch (IllegalArgumentException e) {
+            assertTrue(a.getSuggestionPage("p", 30, second).getTerms().size() == 30);
+        }
+        try {
+            a.getSuggestionPage("p", 30, "not a token");
+            fail("the token is not valid");
+        } catch (IllegalArgumentException e) {
+            assertFalse(a.getSuggestionPage("x", 30, null).hasNext());
+        }
+    }
+
+    /*
+     * This checks that words are spelled from the path of their node, that
+     * every query returns its own Terms, and that a buffer can be read
+     * without making Terms
+     */
+    @Test
+    public void testTermViews() {
+        Autocomplete a = sample();
+        a.addWord("data", 50);
+        assertEquals("[50\tdata, 90\tdatabase, 15\tdate]", a.getSuggestions("dat").toString());
+        assertTrue(a.getTopSuggestions("data", 1).get(0) != a.getTopSuggestions("data", 1).get(0));
+
+        SuggestionBuffer buffer = new SuggestionBuffer(2);
+        assertEquals(2, a.getTopSuggestions("s", buffer));
+        StringBuilder word = new StringBuilder();
+        buffer.appendWord(1, word);
+        assertEquals("stack", word.toString());
+        assertEquals(70, buffer.weight(1));
+        assertEquals("85\tstructures", buffer.get(0).toString());
+    }
+
+    /*
+     * This checks that the transducer answers like the trie on the same
+     * file, and shares the suffixes of an inflected vocabulary
+     */
+    @Test
+    public void testFstMatchesTrie() throws IOException {
+        Path file = Files.createTempFile("autocomplete", ".txt");
+
+        try {
+            String[] stems = {"walk", "talk", "jump", "play", "stack", "test", "wait"};
+            String[] suffixes = {"", "s", "ed", "ing", "er"};
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < stems.length; i++) {
+                for (int j = 0; j < suffixes.length; j++) {
+                    lines.append(100 * i + 10 * j).append("\t")
+                        .append(stems[i]).append(suffixes[j]).append("\n");
+                }
+            }
+            //counted twice, the later weight is kept
+            lines.append("7\twalk\n");
+            Files.write(file, lines.toString().getBytes());
+
+            Autocomplete a = new Autocomplete();
+            a.buildTrie(file.toString(), 5);
+            FstAutocomplete f = new FstAutocomplete();
+            f.buildTrie(file.toString(), 5);
+
+            assertEquals(36, f.countPrefixes(""));
+            for (String prefix : new String[] {"", "w", "wa", "walk", "walki", "t",
+                "te", "stack", "stacks", "jumpe", "x", "W"}) {
+                assertEquals(prefix, a.countPrefixes(prefix), f.countPrefixes(prefix));
+                assertEquals(prefix, a.getSuggestions(prefix).toString(),
+                        f.getSuggestions(prefix).toString());
+                assertEquals(prefix, a.getTopSuggestions(prefix, 4).toString(),
+                        f.getTopSuggestions(prefix, 4).toString());
+                assertEquals(prefix, a.getSubTrie(prefix), f.getSubTrie(prefix));
+            }
+
+            assertTrue(f.countStates() < a.countNodes() / 2);
+            assertTrue(f.estimateHeapBytes() < a.freeze().estimateHeapBytes());
+        } finally {
+            Files.delete(file);
+        }
+
+        FstBuilder builder = new FstBuilder(100);
+        builder.add("stack", 70);
+        try {
+            builder.add("data", 40);
+            fail("the input must be sorted");
+        } catch (IllegalArgumentException e) {
+            builder.add("stacks", 20);
+        }
+        FstAutocomplete f = builder.finish(5);
+        assertEquals("[70\tstack, 20\tstacks]", f.getSuggestions("st").toString());
+        try {
+            f.addWord("trees", 5);
+            fail("the transducer is read-only");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(5, f.numberSuggestions());
+        }
+    }
+
+    /*
+     * This checks that the infix index finds the heaviest words containing
+     * a fragment anywhere, for fragments shorter and longer than a gram
+     */
+    @Test
+    public void testInfixIndex() {
+        InfixIndex index = new InfixIndex(sample());
+        assertEquals(8, index.size());
+
+        assertEquals("[90\tdatabase, 70\tstack, 40\tdata]",
+                index.getTopSuggestions("ta", 3).toString());
+        assertEquals("[90\tdatabase]", index.getTopSuggestions("ase", 3).toString());
+        assertEquals("[70\tstack, 20\tstacks]", index.getTopSuggestions("tack", 3).toString());
+        assertEquals("[85\tstructures]", index.getTopSuggestions("ructure", 3).toString());
+        assertEquals(sample().getTopSuggestions("", 4).toString(),
+                index.getTopSuggestions("", 4).toString());
+        assertTrue(index.getTopSuggestions("tacks", 0).isEmpty());
+        assertTrue(index.getTopSuggestions("xta", 3).isEmpty());
+        assertTrue(index.getTopSuggestions("Ta", 3).isEmpty());
+    }
+
+    /*
+     * This checks that phrases complete on their last, partial word, and
+     * that phrases and prefixes are normalized the same way
+     */
+    @Test
+    public void testPhraseAutocomplete() {
+        PhraseAutocomplete p = new PhraseAutocomplete();
+        p.addWord("interest rate hike", 90);
+        p.addWord("Interest  rates", 70);
+        p.addWord("interest rate", 60);
+        p.addWord("interesting facts", 50);
+        p.addWord("interest", 40);
+        p.addWord("rate hike", 30);
+        p.addWord("interest rate cut!", 20);
+
+        assertEquals("[90\tinterest rate hike, 70\tinterest rates, 60\tinterest rate]",
+                p.getTopSuggestions("interest ra", 3).toString());
+        assertEquals("[90\tinterest rate hike, 70\tinterest rates]",
+                p.getTopSuggestions("  INTEREST\tRA", 2).toString());
+        assertEquals(5, p.countPrefixes("interest"));
+        //a space at the end of the prefix ends the word
+        assertEquals(3, p.countPrefixes("interest "));
+        assertEquals("[50\tinteresting facts]", p.getTopSuggestions("interesti", 5).toString());
+        //a space sorts after z
+        assertEquals("[60\tinterest rate, 70\tinterest rates, 90\tinterest rate hike]",
+                p.getSuggestions("interest rate").toString());
+        assertEquals(6, p.countPrefixes(""));
+        assertTrue(p.getTopSuggestions("interest rate cut", 5).isEmpty());
+        assertNull(p.getSubTrie("rate hike!"));
+
+        p.materialize(2, 3);
+        assertEquals("[90\tinterest rate hike, 70\tinterest rates]",
+                p.getTopSuggestions("in", 2).toString());
+        p.addWord("inflation", 95);
+        assertEquals("[95\tinflation, 90\tinterest rate hike]",
+                p.getTopSuggestions("in", 2).toString());
+
+        //the infix index keeps the single words and skips the phrases
+        InfixIndex index = new InfixIndex(p);
+        assertEquals(2, index.size());
+        assertEquals("[95\tinflation, 40\tinterest]", index.getTopSuggestions("n", 5).toString());
+    }
+
+    /*
+     * This checks that the merged answers of the shards match a single trie,
+     * and that rebuilding one shard leaves the others alone
+     */
+    @Test
+    public void testShardedMatchesTrie() throws IOException {
+        Path file = Files.createTempFile("autocomplete", ".txt");
+
+        try {
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < 600; i++) {
+                lines.append(i * 7 % 600).append("\t").append(toWord(i)).append("\n");
+            }
+            //three groups of 30 words of equal weight, across every shard
+            for (int i = 0; i < 90; i++) {
+                lines.append(700 - i / 30).append("\t").append(toWord(i * 37 % 600))
+                    .append("t\n");
+            }
+            Files.write(file, lines.toString().getBytes());
+
+            Autocomplete a = new Autocomplete();
+            a.buildTrie(file.toString(), 5);
+            ShardedAutocomplete s = new ShardedAutocomplete(4, 3);
+            s.buildTrie(file.toString(), 5);
+            //the words are spread over every shard
+            HashSet<Integer> used = new HashSet<Integer>();
+            for (ITerm term : a.getSuggestions("")) {
+                used.add(s.shardOf(term.getTerm()));
+            }
+            assertEquals(4, used.size());
+
+            for (String prefix : new String[] {"", "a", "b", "ba", "zv", "x", "B"}) {
+                assertEquals(prefix, a.countPrefixes(prefix), s.countPrefixes(prefix));
+                assertEquals(prefix, a.getSuggestions(prefix).toString(),
+                        s.getSuggestions(prefix).toString());
+                assertEquals(prefix, a.getSubTrie(prefix), s.getSubTrie(prefix));
+                //a stable sort keeps equal weights in lexicographic order
+                List<ITerm> all = a.getSuggestions(prefix);
+                all.sort(ITerm.byReverseWeightOrder());
+                for (int k : new int[] {6, 40}) {
+                    String expected = all.subList(0, Math.min(k, all.size())).toString();
+                    assertEquals(prefix, expected, a.getTopSuggestions(prefix, k).toString());
+                    assertEquals(prefix, expected, s.getTopSuggestions(prefix, k).toString());
+                }
+            }
+
+            s.addWord("bab", 1000);
+            assertEquals("[1000\tbab]", s.getTopSuggestions("b", 1).toString());
+
+            int shard = s.shardOf("zzzz");
+            lines.append("999\tzzzz\n");
+            Files.write(file, lines.toString().getBytes());
+            s.rebuildShard(shard, file.toString());
+            assertEquals(a.countPrefixes("") + 2, s.countPrefixes(""));
+            assertEquals("[999\tzzzz]", s.getTopSuggestions("zzz", 5).toString());
+            //bab is only lost if it lives in the rebuilt shard
+            assertEquals(s.shardOf("bab") != shard, s.countPrefixes("bab") == 1);
+        } finally {
+            Files.delete(file);
+        }
+
+        ShardedAutocomplete single = new ShardedAutocomplete(3, 1);
+        single.addWord("stack", 10);
+        single.addWord("stamp", 30);
+        single.addWord("star", 20);
+        assertEquals("[30\tstamp, 20\tstar]", single.getTopSuggestions("sta", 2).toString());
+        assertEquals(3, single.countPrefixes("st"));
+    }
+
+    /*
+     * This checks the JSON answers of the HTTP endpoints and the rejection
+     * of bad requests
+     */
+    @Test
+    public void testSuggestionServer() throws IOException {
+        SuggestionServer server = new SuggestionServer(sample(),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getPort();
+            assertEquals("{\"suggestions\":[{\"term\":\"database\",\"weight\":90},"
+                    + "{\"term\":\"dart\",\"weight\":60}]}", get(base + "/suggest?q=da&k=2"));
+            assertEquals("{\"suggestions\":[]}", get(base + "/suggest?q=x&k=2"));
+            assertEquals("{\"count\":2}", get(base + "/count?q=sta%63"));
+            assertEquals("{\"count\":8}", get(base + "/count"));
+            //k defaults to 10 since the sample has no k
+            assertEquals(8, get(base + "/suggest?q=").split("term").length - 1);
+
+            HttpURLConnection bad = (HttpURLConnection) new URL(base + "/suggest?q=d&k=0")
+                    .openConnection();
+            assertEquals(400, bad.getResponseCode());
+            bad.disconnect();
+            HttpURLConnection post = (HttpURLConnection) new URL(base + "/count").openConnection();
+            post.setRequestMethod("POST");
+            assertEquals(405, post.getResponseCode());
+            post.disconnect();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /*
+     * This checks that pipelined binary requests get the answers of the
+     * trie, matched to their request by id, with and without workers
+     */
+    @Test
+    public void testBinaryProtocol() throws Exception {
+        Autocomplete a = sample();
+        for (int threads : new int[] {0, 2}) {
+            BinaryServer server = new BinaryServer(a,
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), threads);
+            server.start();
+            try (BinaryClient client = new BinaryClient(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), server.getPort()))) {
+                String[] prefixes = {"", "d", "da", "dat", "st", "stack", "x", "D"};
+                List<CompletableFuture<List<ITerm>>> tops =
+                        new ArrayList<CompletableFuture<List<ITerm>>>();
+                List<CompletableFuture<Integer>> counts = new ArrayList<CompletableFuture<Integer>>();
+                //every request is sent before any answer is read
+                for (int i = 0; i < 400; i++) {
+                    String prefix = prefixes[i % prefixes.length];
+                    tops.add(client.getTopSuggestions(prefix, 1 + i % 4));
+                    counts.add(client.countPrefixes(prefix));
+                }
+                for (int i = 0; i < 400; i++) {
+                    String prefix = prefixes[i % prefixes.length];
+                    assertEquals(prefix, a.getTopSuggestions(prefix, 1 + i % 4).toString(),
+                            tops.get(i).get().toString());
+                    assertEquals(prefix, a.countPrefixes(prefix), (int) counts.get(i).get());
+                }
+                assertEquals(a.getSuggestions("").toString(),
+                        client.getSuggestions("").get().toString());
+
+                //an invalid k is answered with an error, not dropped
+                for (int k : new int[] {0, -1, SuggestionServer.MAX_K + 1, Integer.MAX_VALUE}) {
+                    try {
+                        client.getTopSuggestions("d", k).get();
+                        fail("k = " + k + " is not valid");
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof IllegalStateException);
+                    }
+                }
+                assertEquals(a.getTopSuggestions("d", 2).toString(),
+                        client.getTopSuggestions("d", 2).get().toString());
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    /*
+     * This checks that the instrumented trie answers like the trie, counts
+     * its queries and the nodes they visit, explains a query, and publishes
+     * the metrics over JMX
+     */
+    @Test
+    public void testInstrumentedAutocomplete() throws Exception {
+        Autocomplete a = sample();
+        InstrumentedAutocomplete m = new InstrumentedAutocomplete(sample(), 1);
+        for (String prefix : new String[] {"", "d", "da", "stack", "x", "D"}) {
+            assertEquals(prefix, a.getTopSuggestions(prefix, 2).toString(),
+                    m.getTopSuggestions(prefix, 2).toString());
+            assertEquals(prefix, a.getSuggestions(prefix).toString(),
+                    m.getSuggestions(prefix).toString());
+            assertEquals(prefix, a.countPrefixes(prefix), m.countPrefixes(prefix));
+            assertEquals(prefix, a.getSubTrie(prefix), m.getSubTrie(prefix));
+        }
+        OperationStats top = m.getTopSuggestionsStats();
+        assertEquals(6, top.getCalls());
+        assertEquals(6, top.getSampled());
+        assertTrue(top.getP50Nanos() > 0 && top.getP50Nanos() <= top.getP999Nanos());
+        assertTrue(top.getP999Nanos() <= top.getMaxNanos());
+        //2 results for "", "d", "da" and "stack", none for "x" and "D"
+        assertEquals(8.0 / 6, top.getMeanResults(), 1e-9);
+        //getSuggestions() visits the whole trie for "": the root and 30 nodes
+        assertEquals(31, m.getSuggestionsStats().getP99Nodes());
+
+        QueryTrace trace = m.explain("d", 1);
+        assertEquals(1, trace.getPrefixNodes());
+        assertTrue(trace.isFound());
+        assertEquals(1, trace.getResults());
+        assertTrue(trace.getNodesVisited() > 0 && trace.getNodesVisited() < 9);
+        assertTrue(trace.toString().startsWith("getTopSuggestions(\"d\"): 1 results"));
+        assertEquals(6, m.getTopSuggestionsStats().getCalls());
+        assertEquals(31, m.explain("", 0).getNodesVisited());
+
+        ObjectName name = m.register("test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            CompositeData stats = (CompositeData) server.getAttribute(name, "CountPrefixesStats");
+            assertEquals(6L, stats.get("calls"));
+            server.setAttribute(name, new Attribute("SampleInterval", 1000));
+            assertEquals(1000, m.getSampleInterval());
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertEquals(0, m.getCountPrefixesStats().getCalls());
+        } finally {
+            m.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    /*
+     * @return the body of a GET of url
+     */
+    private static String get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /*
+     * @return a word of letters spelling i in base 26
+     */
+    private static String toWord(int i) {
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return word.toString();
+    }
+}